@@ -0,0 +1,80 @@
+package me.zhangyuanwei.csslayout;
+
+import android.content.Context;
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 稳定状态下 measure/layout 不分配对象
+ * 在设备上运行，使用 Debug 的分配计数，Robolectric 中分配计数始终为 0
+ */
+@RunWith(AndroidJUnit4.class)
+public class MeasureAllocationTest {
+
+    /**
+     * 预热次数，填充节点池、文本缓存和 View 内部的 measure 缓存
+     */
+    private static final int WARMUP_ITERATIONS = 5;
+
+    private static final int ITERATIONS = 20;
+
+    @Test
+    public void requestLayoutLeavesAndRelayoutAllocatesNothing() {
+        final int[] allocCount = new int[1];
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                Context context = InstrumentationRegistry.getTargetContext();
+                ViewGroup root = (ViewGroup) LayoutInflater.from(context).inflate(R.layout.activity_main, null);
+
+                int width = context.getResources().getDisplayMetrics().widthPixels;
+                int widthMeasureSpec = View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY);
+                int heightMeasureSpec = View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED);
+
+                for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                    requestLayoutLeaves(root);
+                    measureAndLayout(root, widthMeasureSpec, heightMeasureSpec);
+                }
+
+                Debug.resetThreadAllocCount();
+                Debug.startAllocCounting();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    requestLayoutLeaves(root);
+                    measureAndLayout(root, widthMeasureSpec, heightMeasureSpec);
+                }
+                Debug.stopAllocCounting();
+                allocCount[0] = Debug.getThreadAllocCount();
+            }
+        });
+
+        assertEquals("allocations in " + ITERATIONS + " measure/layout passes", 0, allocCount[0]);
+    }
+
+    private static void measureAndLayout(ViewGroup root, int widthMeasureSpec, int heightMeasureSpec) {
+        root.measure(widthMeasureSpec, heightMeasureSpec);
+        root.layout(0, 0, root.getMeasuredWidth(), root.getMeasuredHeight());
+    }
+
+    private static void requestLayoutLeaves(ViewGroup group) {
+        int count = group.getChildCount();
+        View child;
+        for (int index = 0; index < count; index++) {
+            child = group.getChildAt(index);
+            if (child instanceof ViewGroup && ((ViewGroup) child).getChildCount() > 0) {
+                requestLayoutLeaves((ViewGroup) child);
+            } else {
+                child.requestLayout();
+            }
+        }
+    }
+}
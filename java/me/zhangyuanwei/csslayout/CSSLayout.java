@@ -1,11 +1,15 @@
 package me.zhangyuanwei.csslayout;
 
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.ValueAnimator;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.util.AttributeSet;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewParent;
+import android.widget.TextView;
 
 import com.facebook.csslayout.CSSAlign;
 import com.facebook.csslayout.CSSConstants;
@@ -15,23 +19,23 @@ import com.facebook.csslayout.CSSJustify;
 import com.facebook.csslayout.CSSLayoutContext;
 import com.facebook.csslayout.CSSNode.MeasureFunction;
 import com.facebook.csslayout.CSSPositionType;
+import com.facebook.csslayout.CSSStyle;
 import com.facebook.csslayout.CSSWrap;
 import com.facebook.csslayout.MeasureOutput;
 import com.facebook.csslayout.Spacing;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Created by zhangyuanwei on 15/8/22.
+ * <p/>
+ * 构造函数、LayoutParams 的解析以及添加子节点都可以在后台线程执行（例如 AsyncLayoutInflater），
+ * 使用的节点池是线程独立的。后台线程创建的 CSSLayout 树在添加到窗口之前不能被其他线程访问，
+ * 通过 Handler 等方式交给主线程后，之后的修改、measure 和 layout 都只能在主线程进行。
  */
 public class CSSLayout extends ViewGroup {
 
-    /**
-     * CSSNode 计算上下文
-     */
-    private CSSLayoutContext mCSSLayoutContext;
-
     /**
      * 当前节点的 CSSNode
      */
@@ -42,15 +46,46 @@ public class CSSLayout extends ViewGroup {
      */
     private ArrayList<ChildProperty> mChildProperties;
 
+    private CSSLayoutContext mCSSLayoutContext;
+
     /**
      * 是否为根节点，默认为根节点，被添加到 CSSLayout 后，置为false
      */
     private boolean isRootNode = true;
 
     /**
-     * 当 requestLayout 的时候，是否需要 dirty 所有子节点
+     * 布局版本号，只在根节点上使用，树中任何节点 requestLayout 时递增
      */
-    private boolean needDirtyOnRequestLayout = true;
+    private int mLayoutGeneration = 0;
+
+    /**
+     * 上次计算时的版本号及 MeasureSpec，用于跳过重复的计算
+     */
+    private int mCalculatedGeneration = -1;
+    private int mLastWidthMeasureSpec;
+    private int mLastHeightMeasureSpec;
+
+    /**
+     * 上次完成 onMeasure 时的版本号
+     */
+    private int mMeasuredGeneration = -1;
+
+    /**
+     * 根节点计算的序号，同一次计算中，相同参数的计算函数结果可以复用
+     * 不同线程上的根节点可能同时计算，序号需要保证唯一
+     */
+    private static final AtomicInteger sCalculationPass = new AtomicInteger();
+
+    /**
+     * 布局动画，动画过程中子节点的位置在起止位置之间插值，不重新计算
+     */
+    private ValueAnimator mLayoutAnimator = null;
+    private float mLayoutAnimationFraction = 1;
+
+    /**
+     * 等待下一次 layout 时开始的动画时长，小于 0 表示没有
+     */
+    private long mPendingAnimationDuration = -1;
 
     public CSSLayout(Context context) {
         this(context, null);
@@ -69,25 +104,13 @@ public class CSSLayout extends ViewGroup {
     }
 
     /**
-     * 当 requestLayout 时，因为不知道具体是哪个子节点触发的，所以
-     * 我们需要把非 CSSLayout 的子节点对应的 CSSNode 都设置为 dirty
+     * requestLayout 时不 dirty 子节点
+     * 当前节点已经请求过重新布局时，子节点的 requestLayout 不会再传递到这里，
+     * 所以非 CSSLayout 子节点在 fillChildNode 中根据自己的 isLayoutRequested 设置为 dirty
      * CSSLayout 类型的子节点，自己会被 dirty
      */
     @Override
     public void requestLayout() {
-
-        if (needDirtyOnRequestLayout) {
-            int count = mChildProperties.size();
-            int index;
-            ChildProperty prop;
-            for (index = 0; index < count; index++) {
-                prop = mChildProperties.get(index);
-                if (!prop.isCssLayout) {
-                    prop.cssNode.dirty();
-                }
-            }
-        }
-
         requestLayoutWhithoutDirty();
     }
 
@@ -95,16 +118,10 @@ public class CSSLayout extends ViewGroup {
      * 请求重新布局，不 dirty 节点
      */
     protected void requestLayoutWhithoutDirty() {
-        ViewParent parent = getParent();
-        if (parent instanceof CSSLayout) {
-            CSSLayout parentLayout = ((CSSLayout) parent);
-            boolean oldValue = parentLayout.needDirtyOnRequestLayout;
-            parentLayout.needDirtyOnRequestLayout = false;
-            super.requestLayout();
-            parentLayout.needDirtyOnRequestLayout = oldValue;
-        } else {
-            super.requestLayout();
-        }
+        CSSLayout root = getRootLayout();
+        root.mLayoutGeneration++;
+
+        super.requestLayout();
     }
 
     /**
@@ -119,17 +136,14 @@ public class CSSLayout extends ViewGroup {
 
         // CSSLayout 中，只有根节点需要调用计算函数
         if (isRootNode) {
-            // 根据传递的宽高信息设置 CSSNode
-            mCSSNode.setMeasureSpec(widthMeasureSpec, heightMeasureSpec);
-
-            // 根据 LayoutParams 填充子节点
-            fillChildNode();
-
-            // 执行计算
-            if (mCSSLayoutContext == null) {
-                mCSSLayoutContext = new CSSLayoutContext();
+            // 没有节点变化，且约束条件可以得到相同的结果时，直接使用上次的结果
+            // ScrollView 等父节点在一帧内可能会多次调用 measure
+            if (canReuseMeasure(widthMeasureSpec, heightMeasureSpec)) {
+                setMeasuredDimension(getMeasuredWidth(), getMeasuredHeight());
+                return;
             }
-            mCSSNode.calculateLayout(mCSSLayoutContext);
+
+            calculateRootLayout(widthMeasureSpec, heightMeasureSpec);
         }
 
         // 调用子节点的 measure
@@ -142,11 +156,128 @@ public class CSSLayout extends ViewGroup {
         setMeasuredDimension((int) width, (int) height);
 
         if (isRootNode) {
-            //将布局标记为已使用
-            markLayoutSeen();
+            mMeasuredGeneration = mLayoutGeneration;
+        }
+    }
+
+    /**
+     * 执行根节点的计算
+     *
+     * @param widthMeasureSpec
+     * @param heightMeasureSpec
+     */
+    /* package */ void calculateRootLayout(int widthMeasureSpec, int heightMeasureSpec) {
+        long start = System.nanoTime();
+
+        // 新的计算，之前的计算函数结果不再有效
+        sCalculationPass.incrementAndGet();
+
+        // 根据传递的宽高信息设置 CSSNode
+        mCSSNode.setMeasureSpec(widthMeasureSpec, heightMeasureSpec);
+
+        // 根据 LayoutParams 填充子节点
+        fillChildNode();
+
+        // 执行计算
+        mCSSNode.calculateLayout(getLayoutContext());
+
+        // 将布局标记为已使用
+        // 计算结果会被直接读取，在这里标记，否则之后再 dirty 节点会抛出异常
+        markLayoutSeen();
+
+        mCalculatedGeneration = mLayoutGeneration;
+        mLastWidthMeasureSpec = widthMeasureSpec;
+        mLastHeightMeasureSpec = heightMeasureSpec;
+
+        CSSLayoutStats.getInstance().onRootCalculated(System.nanoTime() - start);
+    }
+
+    /**
+     * 根节点的计算上下文，每个根节点使用自己的上下文，不同线程上的根节点可以同时计算
+     *
+     * @return
+     */
+    /* package */ CSSLayoutContext getLayoutContext() {
+        if (mCSSLayoutContext == null) {
+            mCSSLayoutContext = new CSSLayoutContext();
+        }
+        return mCSSLayoutContext;
+    }
+
+    /**
+     * 是否为已经计算过的根节点
+     *
+     * @return
+     */
+    /* package */ boolean hasRootLayout() {
+        return isRootNode && mCalculatedGeneration != -1;
+    }
+
+    /* package */ int getLastWidthMeasureSpec() {
+        return mLastWidthMeasureSpec;
+    }
+
+    /* package */ int getLastHeightMeasureSpec() {
+        return mLastHeightMeasureSpec;
+    }
+
+    /**
+     * 判断上次的计算结果是否可以复用
+     *
+     * @param widthMeasureSpec
+     * @param heightMeasureSpec
+     * @return
+     */
+    private boolean canReuseMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        if (mMeasuredGeneration != mLayoutGeneration) {
+            return false;
+        }
+        return canReuseSpec(mLastWidthMeasureSpec, widthMeasureSpec, getMeasuredWidth())
+                && canReuseSpec(mLastHeightMeasureSpec, heightMeasureSpec, getMeasuredHeight());
+    }
+
+    /**
+     * MeasureSpec 相同，或者新的 AT_MOST 上限不大于上次的上限，且仍能容纳上次的结果时，结果不变
+     *
+     * @param lastSpec
+     * @param spec
+     * @param lastSize 上次的计算结果
+     * @return
+     */
+    private static boolean canReuseSpec(int lastSpec, int spec, int lastSize) {
+        if (lastSpec == spec) {
+            return true;
+        }
+
+        if (MeasureSpec.getMode(spec) != MeasureSpec.AT_MOST) {
+            return false;
+        }
+
+        int size = MeasureSpec.getSize(spec);
+        switch (MeasureSpec.getMode(lastSpec)) {
+            case MeasureSpec.AT_MOST:
+                return lastSize <= size && size <= MeasureSpec.getSize(lastSpec);
+            case MeasureSpec.UNSPECIFIED:
+                return lastSize <= size;
+            default:
+                return false;
         }
     }
 
+    /**
+     * 获取当前 CSSLayout 树的根节点
+     *
+     * @return
+     */
+    private CSSLayout getRootLayout() {
+        CSSLayout layout = this;
+        ViewParent parent;
+        while (!layout.isRootNode && (parent = layout.getParent()) instanceof CSSLayout) {
+            layout = (CSSLayout) parent;
+        }
+        return layout;
+    }
+
     /**
      * 设置子 CssNode 相关属性
      */
@@ -159,18 +290,49 @@ public class CSSLayout extends ViewGroup {
         CSSNode node;
         LayoutParams params;
 
+        // 子节点在 CSSNode 中的索引，GONE 的子节点不在 CSSNode 树中
+        int nodeIndex = 0;
+
         for (index = 0; index < count; index++) {
             prop = mChildProperties.get(index);
             node = prop.cssNode;
             child = prop.view;
 
+            // 可见性变化时，只从 CSSNode 树中移除或添加节点，不释放节点
+            if (child.getVisibility() == GONE) {
+                if (prop.isAttached) {
+                    mCSSNode.removeChildAt(nodeIndex);
+                    prop.isAttached = false;
+                }
+                continue;
+            }
+
+            if (!prop.isAttached) {
+                mCSSNode.addChildAt(node, nodeIndex);
+                prop.isAttached = true;
+                // addChildAt 只会 dirty 父节点，GONE 期间子节点的变化没有被记录，需要重新计算
+                if (!prop.isCssLayout) {
+                    node.dirty();
+                }
+            }
+            nodeIndex++;
+
+            // 请求过重新布局的子节点需要重新计算，已经 layout 过的子节点 FORCE_LAYOUT 标记已被清除
+            // 不依赖 requestLayout 是否传递到了当前节点
+            if (!prop.isCssLayout && child.isLayoutRequested()) {
+                node.dirty();
+            }
+
             params = ((LayoutParams) child.getLayoutParams());
-            params.fillCSSNode(node);
+            params.fillCSSNode(node, prop.isCssLayout ? null : child);
             node.isMeasured = false;
 
             // 如果子节点是 CSSLayout，则递归调用
+            // 否则根据 LayoutParams 选择计算函数
             if (prop.isCssLayout) {
                 ((CSSLayout) prop.view).fillChildNode();
+            } else {
+                params.fillLeafNode(node);
             }
         }
     }
@@ -193,7 +355,7 @@ public class CSSLayout extends ViewGroup {
             node = prop.cssNode;
             child = prop.view;
 
-            if (!node.isMeasured) {
+            if (prop.isAttached && !node.isMeasured) {
                 w = MeasureSpec.makeMeasureSpec((int) (node.getLayoutWidth() + 0.5), MeasureSpec.EXACTLY);
                 h = MeasureSpec.makeMeasureSpec((int) (node.getLayoutHeight() + 0.5), MeasureSpec.EXACTLY);
                 child.measure(w, h);
@@ -213,6 +375,20 @@ public class CSSLayout extends ViewGroup {
      */
     @Override
     protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        if (mPendingAnimationDuration >= 0) {
+            startLayoutAnimation(mPendingAnimationDuration);
+            mPendingAnimationDuration = -1;
+        }
+
+        layoutChildren(mLayoutAnimationFraction);
+    }
+
+    /**
+     * 布局子节点
+     *
+     * @param fraction 动画进度，有起始位置的子节点在起始位置和计算结果之间插值，1 表示直接使用计算结果
+     */
+    private void layoutChildren(float fraction) {
         int count = mChildProperties.size();
         int index;
 
@@ -221,9 +397,13 @@ public class CSSLayout extends ViewGroup {
         View child;
 
         float x, y, w, h;
+        int left, top, right, bottom;
 
         for (index = 0; index < count; index++) {
             prop = mChildProperties.get(index);
+            if (!prop.isAttached) {
+                continue;
+            }
             node = prop.cssNode;
             child = prop.view;
 
@@ -240,10 +420,114 @@ public class CSSLayout extends ViewGroup {
                 this.layout();
             }
             */
-            child.layout((int) (x + 0.5), (int) (y + 0.5), (int) (x + w + 0.5), (int) (y + h + 0.5));
+            left = (int) (x + 0.5);
+            top = (int) (y + 0.5);
+            right = (int) (x + w + 0.5);
+            bottom = (int) (y + h + 0.5);
+
+            if (fraction < 1 && prop.hasFromFrame) {
+                left = interpolate(prop.fromLeft, left, fraction);
+                top = interpolate(prop.fromTop, top, fraction);
+                right = interpolate(prop.fromRight, right, fraction);
+                bottom = interpolate(prop.fromBottom, bottom, fraction);
+            }
+
+            child.layout(left, top, right, bottom);
+        }
+    }
+
+    private static int interpolate(int from, int to, float fraction) {
+        return (int) (from + (to - from) * fraction + 0.5f);
+    }
+
+    /**
+     * 以动画的方式执行布局变化
+     * 记录子节点当前的位置，执行 changes 后只计算一次最终布局，
+     * 动画过程中每一帧只在起止位置之间插值并调用子节点的 layout，不会重新计算
+     * 只对当前 CSSLayout 的直接子节点插值
+     *
+     * @param duration 动画时长，单位毫秒
+     * @param changes  修改布局属性的操作，例如调用 setJustifyContent 或修改子节点的 LayoutParams
+     */
+    public void animateLayout(long duration, Runnable changes) {
+        // 取消正在进行的动画，子节点停留在当前位置，作为新动画的起始位置
+        if (mLayoutAnimator != null) {
+            ValueAnimator animator = mLayoutAnimator;
+            mLayoutAnimator = null;
+            animator.cancel();
+        }
+        mLayoutAnimationFraction = 1;
+
+        int count = mChildProperties.size();
+        int index;
+        ChildProperty prop;
+        View child;
+
+        for (index = 0; index < count; index++) {
+            prop = mChildProperties.get(index);
+            child = prop.view;
+            prop.fromLeft = child.getLeft();
+            prop.fromTop = child.getTop();
+            prop.fromRight = child.getRight();
+            prop.fromBottom = child.getBottom();
+            prop.hasFromFrame = prop.isAttached;
         }
+
+        mPendingAnimationDuration = duration;
+        changes.run();
+        requestLayoutWhithoutDirty();
     }
 
+    private void startLayoutAnimation(long duration) {
+        ValueAnimator animator = ValueAnimator.ofFloat(0, 1);
+        animator.setDuration(duration);
+        animator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+            @Override
+            public void onAnimationUpdate(ValueAnimator animation) {
+                if (animation == mLayoutAnimator) {
+                    mLayoutAnimationFraction = animation.getAnimatedFraction();
+                    layoutChildren(mLayoutAnimationFraction);
+                }
+            }
+        });
+        animator.addListener(new AnimatorListenerAdapter() {
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                if (animation == mLayoutAnimator) {
+                    mLayoutAnimator = null;
+                    mLayoutAnimationFraction = 1;
+                    layoutChildren(1);
+                    clearFromFrames();
+                }
+            }
+        });
+
+        mLayoutAnimator = animator;
+        mLayoutAnimationFraction = 0;
+        animator.start();
+    }
+
+    private void clearFromFrames() {
+        int count = mChildProperties.size();
+        for (int index = 0; index < count; index++) {
+            mChildProperties.get(index).hasFromFrame = false;
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+
+        // 离开窗口时直接结束动画
+        mPendingAnimationDuration = -1;
+        if (mLayoutAnimator != null) {
+            ValueAnimator animator = mLayoutAnimator;
+            mLayoutAnimator = null;
+            animator.cancel();
+            mLayoutAnimationFraction = 1;
+            clearFromFrames();
+        }
+    }
 
     /**
      * 设置 CSSNode 的 Layout 状态为已使用
@@ -258,7 +542,9 @@ public class CSSLayout extends ViewGroup {
 
             // 如果子节点是 CSSLayout，则递归调用
             // 否则调用对应节点 markLayoutSeen
-            if (prop.isCssLayout) {
+            if (!prop.isAttached) {
+                continue;
+            } else if (prop.isCssLayout) {
                 ((CSSLayout) prop.view).markLayoutSeen();
             } else if (prop.cssNode.hasNewLayout()) {
                 prop.cssNode.markLayoutSeen();
@@ -271,6 +557,22 @@ public class CSSLayout extends ViewGroup {
         }
     }
 
+    /**
+     * 根据子 View 的索引，计算对应节点在 CSSNode 中的索引
+     *
+     * @param childIndex
+     * @return
+     */
+    private int getNodeIndex(int childIndex) {
+        int nodeIndex = 0;
+        for (int index = 0; index < childIndex; index++) {
+            if (mChildProperties.get(index).isAttached) {
+                nodeIndex++;
+            }
+        }
+        return nodeIndex;
+    }
+
     @Override
     public LayoutParams generateLayoutParams(AttributeSet attrs) {
         return new LayoutParams(getContext(), attrs);
@@ -306,22 +608,22 @@ public class CSSLayout extends ViewGroup {
             int attr = a.getIndex(i);
             switch (attr) {
                 case R.styleable.CSSLayout_direction:
-                    setDirection(getEnum(a.getInt(attr, 0), CSSDirection.class));
+                    setDirection(getEnum(a.getInt(attr, 0), DIRECTION_VALUES));
                     break;
                 case R.styleable.CSSLayout_flexDirection:
-                    setFlexDirection(getEnum(a.getInt(attr, 0), CSSFlexDirection.class));
+                    setFlexDirection(getEnum(a.getInt(attr, 0), FLEX_DIRECTION_VALUES));
                     break;
                 case R.styleable.CSSLayout_justifyContent:
-                    setJustifyContent(getEnum(a.getInt(attr, 0), CSSJustify.class));
+                    setJustifyContent(getEnum(a.getInt(attr, 0), JUSTIFY_VALUES));
                     break;
                 case R.styleable.CSSLayout_alignContent:
-                    setAlignContent(getEnum(a.getInt(attr, 0), CSSAlign.class));
+                    setAlignContent(getEnum(a.getInt(attr, 0), ALIGN_VALUES));
                     break;
                 case R.styleable.CSSLayout_alignItems:
-                    setAlignItems(getEnum(a.getInt(attr, 0), CSSAlign.class));
+                    setAlignItems(getEnum(a.getInt(attr, 0), ALIGN_VALUES));
                     break;
                 case R.styleable.CSSLayout_flexWrap:
-                    setFlexWrap(getEnum(a.getInt(attr, 0), CSSWrap.class));
+                    setFlexWrap(getEnum(a.getInt(attr, 0), WRAP_VALUES));
                     break;
 
                 case R.styleable.CSSLayout_padding:
@@ -459,7 +761,9 @@ public class CSSLayout extends ViewGroup {
 
             int count = layout.getChildCount();
             int index;
+            int nodeIndex = 0;
             boolean isCssLayout;
+            boolean isAttached;
             LayoutParams params;
             CSSNode node;
 
@@ -484,11 +788,18 @@ public class CSSLayout extends ViewGroup {
                         node.setMeasureFunction(measureFunction);
                     }
 
-                    layout.mCSSNode.addChildAt(node, index);
-                    layout.mChildProperties.add(index, ChildProperty.get(child, node, isCssLayout));
+                    // GONE 的子节点暂不添加到 CSSNode 树中
+                    isAttached = child.getVisibility() != GONE;
+                    if (isAttached) {
+                        layout.mCSSNode.addChildAt(node, nodeIndex);
+                    }
+                    layout.mChildProperties.add(index, ChildProperty.get(child, node, isCssLayout, isAttached));
                 }
 
                 params.layoutIndex = index;
+                if (layout.mChildProperties.get(index).isAttached) {
+                    nodeIndex++;
+                }
             }
         }
 
@@ -514,11 +825,15 @@ public class CSSLayout extends ViewGroup {
             params.layoutIndex = LayoutParams.LAYOUT_INDEX_UNDEFINED;
 
             prop = layout.mChildProperties.remove(index);
-            node = layout.mCSSNode.removeChildAt(index);
+            node = prop.cssNode;
+            if (prop.isAttached) {
+                layout.mCSSNode.removeChildAt(layout.getNodeIndex(index));
+            }
 
             if (prop.isCssLayout) {
                 childLayout = ((CSSLayout) prop.view);
                 childLayout.isRootNode = true;
+                childLayout.mLayoutGeneration++;
             } else {
                 // 不是 CSSLayout，则 CSSNode 是临时分配的，需要释放
                 node.bindingView = null;
@@ -547,6 +862,38 @@ public class CSSLayout extends ViewGroup {
             CSSNode cssNode = ((CSSNode) node);
             View bindingView = cssNode.bindingView;
 
+            // 同一次计算中，引擎可能以相同的参数多次计算同一个节点（例如 flex、stretch 时），直接使用上次的结果
+            if (cssNode.measurePass == sCalculationPass.get()
+                    && isSameConstraint(cssNode.measureWidth, cssNode.measureExactly, width, isExactly)) {
+                measureOutput.width = cssNode.measureResultWidth;
+                measureOutput.height = cssNode.measureResultHeight;
+
+                // View 最后一次 measure 的参数与这个结果不同时，View 的尺寸已经不是这个结果，
+                // 需要由 measureChildrenIfNeed 按最终尺寸重新 measure
+                if (cssNode.isMeasured && !isSameConstraint(cssNode.viewMeasureWidth,
+                        cssNode.viewMeasureExactly, width, isExactly)) {
+                    cssNode.isMeasured = false;
+                }
+                return;
+            }
+
+            measureLeaf(cssNode, bindingView, width, isExactly, measureOutput);
+
+            cssNode.measurePass = sCalculationPass.get();
+            cssNode.measureWidth = width;
+            cssNode.measureExactly = isExactly;
+            cssNode.measureResultWidth = measureOutput.width;
+            cssNode.measureResultHeight = measureOutput.height;
+        }
+
+        private void measureLeaf(CSSNode cssNode, View bindingView, float width, boolean isExactly, MeasureOutput measureOutput) {
+            // 普通的 TextView 使用缓存的文本尺寸，不调用 View.measure
+            // isMeasured 保持为 false，由 measureChildrenIfNeed 按最终尺寸 measure 一次
+            if (bindingView instanceof TextView && TextMeasureCache.canMeasure((TextView) bindingView)) {
+                TextMeasureCache.measure((TextView) bindingView, width, isExactly, measureOutput);
+                return;
+            }
+
             int w, h;
             if (CSSConstants.isUndefined(width)) {
                 w = MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED);
@@ -559,14 +906,193 @@ public class CSSLayout extends ViewGroup {
             measureOutput.width = bindingView.getMeasuredWidth();
             measureOutput.height = bindingView.getMeasuredHeight();
             cssNode.isMeasured = true;
+            cssNode.viewMeasureWidth = width;
+            cssNode.viewMeasureExactly = isExactly;
+        }
+
+        private boolean isSameConstraint(float width1, boolean isExactly1, float width2, boolean isExactly2) {
+            return isExactly1 == isExactly2
+                    && (width1 == width2 || (CSSConstants.isUndefined(width1) && CSSConstants.isUndefined(width2)));
+        }
+    };
+
+    /**
+     * 设置了 aspectRatio 的非 CSSLayout 子节点的计算函数
+     * 根据宽度计算高度，不调用 View.measure
+     */
+    private static final MeasureFunction aspectRatioMeasureFunction = new MeasureFunction() {
+
+        @Override
+        public void measure(com.facebook.csslayout.CSSNode node, float width, boolean isExactly, MeasureOutput measureOutput) {
+            // 宽度未知时无法根据比例计算，只能 measure View
+            if (CSSConstants.isUndefined(width)) {
+                measureFunction.measure(node, width, isExactly, measureOutput);
+                return;
+            }
+
+            CSSNode cssNode = (CSSNode) node;
+            float aspectRatio = ((LayoutParams) cssNode.bindingView.getLayoutParams()).aspectRatio;
+            measureOutput.width = width;
+            measureOutput.height = width / aspectRatio;
+
+            // 宽度未知时可能已经 measure 过 View，尺寸与按比例计算的结果不同，
+            // 需要由 measureChildrenIfNeed 按最终尺寸重新 measure
+            cssNode.isMeasured = false;
         }
     };
 
     public static class CSSNode extends com.facebook.csslayout.CSSNode {
+        /**
+         * 被设置过的样式属性，值与 LayoutCapture 文件格式中的标记相同
+         */
+        /* package */ static final int STYLE_DIRECTION = LayoutCaptureFormat.STYLE_DIRECTION;
+        /* package */ static final int STYLE_FLEX_DIRECTION = LayoutCaptureFormat.STYLE_FLEX_DIRECTION;
+        /* package */ static final int STYLE_JUSTIFY_CONTENT = LayoutCaptureFormat.STYLE_JUSTIFY_CONTENT;
+        /* package */ static final int STYLE_ALIGN_CONTENT = LayoutCaptureFormat.STYLE_ALIGN_CONTENT;
+        /* package */ static final int STYLE_ALIGN_ITEMS = LayoutCaptureFormat.STYLE_ALIGN_ITEMS;
+        /* package */ static final int STYLE_ALIGN_SELF = LayoutCaptureFormat.STYLE_ALIGN_SELF;
+        /* package */ static final int STYLE_POSITION_TYPE = LayoutCaptureFormat.STYLE_POSITION_TYPE;
+        /* package */ static final int STYLE_FLEX_WRAP = LayoutCaptureFormat.STYLE_FLEX_WRAP;
+        /* package */ static final int STYLE_FLEX = LayoutCaptureFormat.STYLE_FLEX;
+        /* package */ static final int STYLE_MARGIN = LayoutCaptureFormat.STYLE_MARGIN;
+        /* package */ static final int STYLE_PADDING = LayoutCaptureFormat.STYLE_PADDING;
+        /* package */ static final int STYLE_BORDER = LayoutCaptureFormat.STYLE_BORDER;
+        /* package */ static final int STYLE_POSITION_TOP = LayoutCaptureFormat.STYLE_POSITION_TOP;
+        /* package */ static final int STYLE_POSITION_BOTTOM = LayoutCaptureFormat.STYLE_POSITION_BOTTOM;
+        /* package */ static final int STYLE_POSITION_LEFT = LayoutCaptureFormat.STYLE_POSITION_LEFT;
+        /* package */ static final int STYLE_POSITION_RIGHT = LayoutCaptureFormat.STYLE_POSITION_RIGHT;
+        /* package */ static final int STYLE_MIN_WIDTH = LayoutCaptureFormat.STYLE_MIN_WIDTH;
+        /* package */ static final int STYLE_MIN_HEIGHT = LayoutCaptureFormat.STYLE_MIN_HEIGHT;
+        /* package */ static final int STYLE_MAX_WIDTH = LayoutCaptureFormat.STYLE_MAX_WIDTH;
+        /* package */ static final int STYLE_MAX_HEIGHT = LayoutCaptureFormat.STYLE_MAX_HEIGHT;
+
+        /**
+         * 由 LayoutParams 控制的属性
+         */
+        /* package */ static final int STYLE_LAYOUT_PARAMS = STYLE_ALIGN_SELF | STYLE_POSITION_TYPE | STYLE_FLEX
+                | STYLE_MARGIN | STYLE_POSITION_TOP | STYLE_POSITION_BOTTOM | STYLE_POSITION_LEFT
+                | STYLE_POSITION_RIGHT | STYLE_MIN_WIDTH | STYLE_MIN_HEIGHT | STYLE_MAX_WIDTH | STYLE_MAX_HEIGHT;
+
         /* package */ View bindingView = null;
         /* package */ boolean isMeasured = false;
 
+        /**
+         * 当前使用的计算函数
+         */
+        /* package */ MeasureFunction boundMeasureFunction = null;
+
+        /**
+         * 最近一次计算函数的参数和结果，只在同一次根节点计算中有效
+         */
+        /* package */ int measurePass = -1;
+        /* package */ float measureWidth;
+        /* package */ boolean measureExactly;
+        /* package */ float measureResultWidth;
+        /* package */ float measureResultHeight;
+
+        /**
+         * 最近一次调用 View.measure 时的参数，isMeasured 为 true 时有效
+         */
+        /* package */ float viewMeasureWidth;
+        /* package */ boolean viewMeasureExactly;
+
+        /**
+         * 被设置过的属性，未设置的属性保持默认值，clear 时只需要重置这些属性
+         */
+        /* package */ int styleFlags = 0;
+
+        @Override
+        public void setDirection(CSSDirection direction) {
+            styleFlags |= STYLE_DIRECTION;
+            super.setDirection(direction);
+        }
+
+        @Override
+        public void setFlexDirection(CSSFlexDirection flexDirection) {
+            styleFlags |= STYLE_FLEX_DIRECTION;
+            super.setFlexDirection(flexDirection);
+        }
+
+        @Override
+        public void setJustifyContent(CSSJustify justifyContent) {
+            styleFlags |= STYLE_JUSTIFY_CONTENT;
+            super.setJustifyContent(justifyContent);
+        }
+
+        @Override
+        public void setAlignItems(CSSAlign alignItems) {
+            styleFlags |= STYLE_ALIGN_ITEMS;
+            super.setAlignItems(alignItems);
+        }
+
+        @Override
+        public void setAlignSelf(CSSAlign alignSelf) {
+            styleFlags |= STYLE_ALIGN_SELF;
+            super.setAlignSelf(alignSelf);
+        }
+
+        @Override
+        public void setPositionType(CSSPositionType positionType) {
+            styleFlags |= STYLE_POSITION_TYPE;
+            super.setPositionType(positionType);
+        }
+
+        @Override
+        public void setWrap(CSSWrap flexWrap) {
+            styleFlags |= STYLE_FLEX_WRAP;
+            super.setWrap(flexWrap);
+        }
+
+        @Override
+        public void setFlex(float flex) {
+            styleFlags |= STYLE_FLEX;
+            super.setFlex(flex);
+        }
+
+        @Override
+        public void setMargin(int spacingType, float margin) {
+            styleFlags |= STYLE_MARGIN;
+            super.setMargin(spacingType, margin);
+        }
+
+        @Override
+        public void setPadding(int spacingType, float padding) {
+            styleFlags |= STYLE_PADDING;
+            super.setPadding(spacingType, padding);
+        }
+
+        @Override
+        public void setBorder(int spacingType, float border) {
+            styleFlags |= STYLE_BORDER;
+            super.setBorder(spacingType, border);
+        }
+
+        @Override
+        public void setPositionTop(float positionTop) {
+            styleFlags |= STYLE_POSITION_TOP;
+            super.setPositionTop(positionTop);
+        }
+
+        @Override
+        public void setPositionBottom(float positionBottom) {
+            styleFlags |= STYLE_POSITION_BOTTOM;
+            super.setPositionBottom(positionBottom);
+        }
+
+        @Override
+        public void setPositionLeft(float positionLeft) {
+            styleFlags |= STYLE_POSITION_LEFT;
+            super.setPositionLeft(positionLeft);
+        }
+
+        @Override
+        public void setPositionRight(float positionRight) {
+            styleFlags |= STYLE_POSITION_RIGHT;
+            super.setPositionRight(positionRight);
+        }
+
         public void setMinWidth(float minWidth) {
+            styleFlags |= STYLE_MIN_WIDTH;
             if (!valuesEqual(style.minWidth, minWidth)) {
                 style.minWidth = minWidth;
                 dirty();
@@ -574,6 +1100,7 @@ public class CSSLayout extends ViewGroup {
         }
 
         public void setMinHeight(float minHeight) {
+            styleFlags |= STYLE_MIN_HEIGHT;
             if (!valuesEqual(style.minHeight, minHeight)) {
                 style.minHeight = minHeight;
                 dirty();
@@ -581,6 +1108,7 @@ public class CSSLayout extends ViewGroup {
         }
 
         public void setMaxWidth(float maxWidth) {
+            styleFlags |= STYLE_MAX_WIDTH;
             if (!valuesEqual(style.maxWidth, maxWidth)) {
                 style.maxWidth = maxWidth;
                 dirty();
@@ -588,6 +1116,7 @@ public class CSSLayout extends ViewGroup {
         }
 
         public void setMaxHeight(float maxHeight) {
+            styleFlags |= STYLE_MAX_HEIGHT;
             if (!valuesEqual(style.maxHeight, maxHeight)) {
                 style.maxHeight = maxHeight;
                 dirty();
@@ -595,6 +1124,7 @@ public class CSSLayout extends ViewGroup {
         }
 
         public void setAlignContent(CSSAlign alignContent) {
+            styleFlags |= STYLE_ALIGN_CONTENT;
             if (!valuesEqual(style.alignContent, alignContent)) {
                 style.alignContent = alignContent;
                 dirty();
@@ -639,6 +1169,16 @@ public class CSSLayout extends ViewGroup {
             }
         }
 
+        @Override
+        public void setMeasureFunction(MeasureFunction measureFunction) {
+            boundMeasureFunction = measureFunction;
+            super.setMeasureFunction(measureFunction);
+        }
+
+        /* package */ CSSStyle getStyle() {
+            return style;
+        }
+
         @Override
         public CSSNode getChildAt(int i) {
             return (CSSNode) super.getChildAt(i);
@@ -649,34 +1189,88 @@ public class CSSLayout extends ViewGroup {
             return (CSSNode) super.removeChildAt(i);
         }
 
+        /**
+         * 重置为默认样式，只处理被设置过的属性，不重新分配 Spacing
+         */
         public void clear() {
-            style.direction = CSSDirection.INHERIT;
-            style.flexDirection = CSSFlexDirection.COLUMN;
-            style.justifyContent = CSSJustify.FLEX_START;
-            style.alignContent = CSSAlign.FLEX_START;
-            style.alignItems = CSSAlign.STRETCH;
-            style.alignSelf = CSSAlign.AUTO;
-            style.positionType = CSSPositionType.RELATIVE;
-            style.flexWrap = CSSWrap.NOWRAP;
-            style.flex = 0;
-
-            style.margin = new Spacing();
-            style.padding = new Spacing();
-            style.border = new Spacing();
-
-            style.positionTop = CSSConstants.UNDEFINED;
-            style.positionBottom = CSSConstants.UNDEFINED;
-            style.positionLeft = CSSConstants.UNDEFINED;
-            style.positionRight = CSSConstants.UNDEFINED;
+            int flags = styleFlags;
+
+            if ((flags & STYLE_DIRECTION) != 0) {
+                style.direction = CSSDirection.INHERIT;
+            }
+            if ((flags & STYLE_FLEX_DIRECTION) != 0) {
+                style.flexDirection = CSSFlexDirection.COLUMN;
+            }
+            if ((flags & STYLE_JUSTIFY_CONTENT) != 0) {
+                style.justifyContent = CSSJustify.FLEX_START;
+            }
+            if ((flags & STYLE_ALIGN_CONTENT) != 0) {
+                style.alignContent = CSSAlign.FLEX_START;
+            }
+            if ((flags & STYLE_ALIGN_ITEMS) != 0) {
+                style.alignItems = CSSAlign.STRETCH;
+            }
+            if ((flags & STYLE_ALIGN_SELF) != 0) {
+                style.alignSelf = CSSAlign.AUTO;
+            }
+            if ((flags & STYLE_POSITION_TYPE) != 0) {
+                style.positionType = CSSPositionType.RELATIVE;
+            }
+            if ((flags & STYLE_FLEX_WRAP) != 0) {
+                style.flexWrap = CSSWrap.NOWRAP;
+            }
+            if ((flags & STYLE_FLEX) != 0) {
+                style.flex = 0;
+            }
+
+            if ((flags & STYLE_MARGIN) != 0) {
+                resetSpacing(style.margin);
+            }
+            if ((flags & STYLE_PADDING) != 0) {
+                resetSpacing(style.padding);
+            }
+            if ((flags & STYLE_BORDER) != 0) {
+                resetSpacing(style.border);
+            }
 
+            if ((flags & STYLE_POSITION_TOP) != 0) {
+                style.positionTop = CSSConstants.UNDEFINED;
+            }
+            if ((flags & STYLE_POSITION_BOTTOM) != 0) {
+                style.positionBottom = CSSConstants.UNDEFINED;
+            }
+            if ((flags & STYLE_POSITION_LEFT) != 0) {
+                style.positionLeft = CSSConstants.UNDEFINED;
+            }
+            if ((flags & STYLE_POSITION_RIGHT) != 0) {
+                style.positionRight = CSSConstants.UNDEFINED;
+            }
+
+            // 宽高每次 fillCSSNode 都会设置，直接重置
             style.width = CSSConstants.UNDEFINED;
             style.height = CSSConstants.UNDEFINED;
 
-            style.minWidth = CSSConstants.UNDEFINED;
-            style.minHeight = CSSConstants.UNDEFINED;
+            if ((flags & STYLE_MIN_WIDTH) != 0) {
+                style.minWidth = CSSConstants.UNDEFINED;
+            }
+            if ((flags & STYLE_MIN_HEIGHT) != 0) {
+                style.minHeight = CSSConstants.UNDEFINED;
+            }
+            if ((flags & STYLE_MAX_WIDTH) != 0) {
+                style.maxWidth = CSSConstants.UNDEFINED;
+            }
+            if ((flags & STYLE_MAX_HEIGHT) != 0) {
+                style.maxHeight = CSSConstants.UNDEFINED;
+            }
+
+            styleFlags = 0;
+            measurePass = -1;
+        }
 
-            style.maxWidth = CSSConstants.UNDEFINED;
-            style.maxHeight = CSSConstants.UNDEFINED;
+        private static void resetSpacing(Spacing spacing) {
+            for (int type = 0; type <= Spacing.ALL; type++) {
+                spacing.set(type, CSSConstants.UNDEFINED);
+            }
         }
 
 
@@ -722,6 +1316,24 @@ public class CSSLayout extends ViewGroup {
         public float maxWidth = CSSConstants.UNDEFINED;
         public float maxHeight = CSSConstants.UNDEFINED;
 
+        /**
+         * 宽高比（宽 / 高），宽高中只有一个确定时，根据比例计算另一个
+         * 对于非 CSSLayout 子节点，宽高都不确定时根据宽度计算高度，不调用 View.measure
+         */
+        public float aspectRatio = CSSConstants.UNDEFINED;
+
+        /**
+         * 非 CSSLayout 子节点的尺寸是否固定
+         * 固定尺寸的节点只 measure 一次，之后直接使用这次的结果，不再设置计算函数
+         */
+        public boolean fixedSize = false;
+
+        /**
+         * fixedSize 为 true 时保存的尺寸
+         */
+        /* package */ int intrinsicWidth = -1;
+        /* package */ int intrinsicHeight = -1;
+
         public LayoutParams() {
             this(DEFAULT_DIMENSION, DEFAULT_DIMENSION);
         }
@@ -739,38 +1351,253 @@ public class CSSLayout extends ViewGroup {
             super(source);
         }
 
-        /* package */ void fillCSSNode(CSSNode node) {
-            if (width != WRAP_CONTENT && width != MATCH_PARENT) {
-                node.setStyleWidth(width);
-            } else {
-                node.setStyleWidth(CSSConstants.UNDEFINED);
+        public void setAlignSelf(CSSAlign alignSelf) {
+            this.alignSelf = alignSelf;
+        }
+
+        public void setPosition(CSSPositionType position) {
+            this.position = position;
+        }
+
+        public void setFlex(float flex) {
+            this.flex = flex;
+        }
+
+        public void setMargin(float margin) {
+            this.margin = margin;
+        }
+
+        public void setMarginLeft(float marginLeft) {
+            this.marginLeft = marginLeft;
+        }
+
+        public void setMarginRight(float marginRight) {
+            this.marginRight = marginRight;
+        }
+
+        public void setMarginTop(float marginTop) {
+            this.marginTop = marginTop;
+        }
+
+        public void setMarginBottom(float marginBottom) {
+            this.marginBottom = marginBottom;
+        }
+
+        public void setTop(float top) {
+            this.top = top;
+        }
+
+        public void setBottom(float bottom) {
+            this.bottom = bottom;
+        }
+
+        public void setLeft(float left) {
+            this.left = left;
+        }
+
+        public void setRight(float right) {
+            this.right = right;
+        }
+
+        public void setMinWidth(float minWidth) {
+            this.minWidth = minWidth;
+        }
+
+        public void setMinHeight(float minHeight) {
+            this.minHeight = minHeight;
+        }
+
+        public void setMaxWidth(float maxWidth) {
+            this.maxWidth = maxWidth;
+        }
+
+        public void setMaxHeight(float maxHeight) {
+            this.maxHeight = maxHeight;
+        }
+
+        public void setAspectRatio(float aspectRatio) {
+            this.aspectRatio = aspectRatio;
+        }
+
+        /**
+         * 设置尺寸是否固定，同时清除保存的尺寸
+         *
+         * @param fixedSize
+         */
+        public void setFixedSize(boolean fixedSize) {
+            this.fixedSize = fixedSize;
+            intrinsicWidth = -1;
+            intrinsicHeight = -1;
+        }
+
+        /**
+         * 根据 LayoutParams 填充节点的样式
+         *
+         * @param node
+         * @param leaf 非 CSSLayout 子节点对应的 View，CSSLayout 子节点为 null
+         */
+        /* package */ void fillCSSNode(CSSNode node, View leaf) {
+            // 先确定最终的宽高，再设置到节点上
+            // 如果先设置为 UNDEFINED 再设置为计算的值，每次计算都会 dirty 节点及其所有祖先节点
+            float styleWidth = isExactDimension(width) ? width : CSSConstants.UNDEFINED;
+            float styleHeight = isExactDimension(height) ? height : CSSConstants.UNDEFINED;
+
+            if (!CSSConstants.isUndefined(aspectRatio) && aspectRatio > 0) {
+                if (isExactDimension(width) && !isExactDimension(height)) {
+                    styleHeight = width / aspectRatio;
+                } else if (isExactDimension(height) && !isExactDimension(width)) {
+                    styleWidth = height * aspectRatio;
+                }
             }
 
-            if (height != WRAP_CONTENT && height != MATCH_PARENT) {
-                node.setStyleHeight(height);
-            } else {
-                node.setStyleHeight(CSSConstants.UNDEFINED);
+            // 固定尺寸的非 CSSLayout 子节点，未确定的宽高使用 measure 一次的结果
+            if (leaf != null && fixedSize) {
+                if (intrinsicWidth < 0) {
+                    int spec = MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED);
+                    leaf.measure(spec, spec);
+                    intrinsicWidth = leaf.getMeasuredWidth();
+                    intrinsicHeight = leaf.getMeasuredHeight();
+                }
+                if (CSSConstants.isUndefined(styleWidth)) {
+                    styleWidth = intrinsicWidth;
+                }
+                if (CSSConstants.isUndefined(styleHeight)) {
+                    styleHeight = intrinsicHeight;
+                }
             }
 
-            node.setMinWidth(minWidth);
-            node.setMinHeight(minHeight);
-            node.setMaxWidth(maxWidth);
-            node.setMaxHeight(maxHeight);
+            node.setStyleWidth(styleWidth);
+            node.setStyleHeight(styleHeight);
 
-            node.setPositionLeft(left);
-            node.setPositionRight(right);
-            node.setPositionTop(top);
-            node.setPositionBottom(bottom);
+            // 不是默认值的属性，以及之前设置过、需要恢复为默认值的属性
+            // 其他属性在节点上保持默认值，不需要写入
+            int styleFlags = getStyleFlags();
+            int flags = styleFlags | (node.styleFlags & CSSNode.STYLE_LAYOUT_PARAMS);
+            if (flags == 0) {
+                return;
+            }
 
-            node.setMargin(Spacing.ALL, margin);
-            node.setMargin(Spacing.LEFT, marginLeft);
-            node.setMargin(Spacing.RIGHT, marginRight);
-            node.setMargin(Spacing.TOP, marginTop);
-            node.setMargin(Spacing.BOTTOM, marginBottom);
+            if ((flags & CSSNode.STYLE_MIN_WIDTH) != 0) {
+                node.setMinWidth(minWidth);
+            }
+            if ((flags & CSSNode.STYLE_MIN_HEIGHT) != 0) {
+                node.setMinHeight(minHeight);
+            }
+            if ((flags & CSSNode.STYLE_MAX_WIDTH) != 0) {
+                node.setMaxWidth(maxWidth);
+            }
+            if ((flags & CSSNode.STYLE_MAX_HEIGHT) != 0) {
+                node.setMaxHeight(maxHeight);
+            }
+
+            if ((flags & CSSNode.STYLE_POSITION_LEFT) != 0) {
+                node.setPositionLeft(left);
+            }
+            if ((flags & CSSNode.STYLE_POSITION_RIGHT) != 0) {
+                node.setPositionRight(right);
+            }
+            if ((flags & CSSNode.STYLE_POSITION_TOP) != 0) {
+                node.setPositionTop(top);
+            }
+            if ((flags & CSSNode.STYLE_POSITION_BOTTOM) != 0) {
+                node.setPositionBottom(bottom);
+            }
+
+            if ((flags & CSSNode.STYLE_MARGIN) != 0) {
+                node.setMargin(Spacing.ALL, margin);
+                node.setMargin(Spacing.LEFT, marginLeft);
+                node.setMargin(Spacing.RIGHT, marginRight);
+                node.setMargin(Spacing.TOP, marginTop);
+                node.setMargin(Spacing.BOTTOM, marginBottom);
+            }
 
-            node.setAlignSelf(alignSelf);
-            node.setFlex(flex);
-            node.setPositionType(position);
+            if ((flags & CSSNode.STYLE_ALIGN_SELF) != 0) {
+                node.setAlignSelf(alignSelf);
+            }
+            if ((flags & CSSNode.STYLE_FLEX) != 0) {
+                node.setFlex(flex);
+            }
+            if ((flags & CSSNode.STYLE_POSITION_TYPE) != 0) {
+                node.setPositionType(position);
+            }
+
+            // 恢复为默认值的属性不再记录
+            node.styleFlags = (node.styleFlags & ~CSSNode.STYLE_LAYOUT_PARAMS) | styleFlags;
+        }
+
+        /**
+         * 不是默认值的字段对应的 CSSNode.STYLE_* 标记
+         * 每次计算时根据字段的值得到，直接修改字段和使用 setter 的效果相同
+         *
+         * @return
+         */
+        private int getStyleFlags() {
+            int flags = 0;
+            if (alignSelf != CSSAlign.AUTO) {
+                flags |= CSSNode.STYLE_ALIGN_SELF;
+            }
+            if (position != CSSPositionType.RELATIVE) {
+                flags |= CSSNode.STYLE_POSITION_TYPE;
+            }
+            if (flex != 0) {
+                flags |= CSSNode.STYLE_FLEX;
+            }
+            if (!CSSConstants.isUndefined(margin) || !CSSConstants.isUndefined(marginLeft)
+                    || !CSSConstants.isUndefined(marginRight) || !CSSConstants.isUndefined(marginTop)
+                    || !CSSConstants.isUndefined(marginBottom)) {
+                flags |= CSSNode.STYLE_MARGIN;
+            }
+            if (!CSSConstants.isUndefined(top)) {
+                flags |= CSSNode.STYLE_POSITION_TOP;
+            }
+            if (!CSSConstants.isUndefined(bottom)) {
+                flags |= CSSNode.STYLE_POSITION_BOTTOM;
+            }
+            if (!CSSConstants.isUndefined(left)) {
+                flags |= CSSNode.STYLE_POSITION_LEFT;
+            }
+            if (!CSSConstants.isUndefined(right)) {
+                flags |= CSSNode.STYLE_POSITION_RIGHT;
+            }
+            if (!CSSConstants.isUndefined(minWidth)) {
+                flags |= CSSNode.STYLE_MIN_WIDTH;
+            }
+            if (!CSSConstants.isUndefined(minHeight)) {
+                flags |= CSSNode.STYLE_MIN_HEIGHT;
+            }
+            if (!CSSConstants.isUndefined(maxWidth)) {
+                flags |= CSSNode.STYLE_MAX_WIDTH;
+            }
+            if (!CSSConstants.isUndefined(maxHeight)) {
+                flags |= CSSNode.STYLE_MAX_HEIGHT;
+            }
+            return flags;
+        }
+
+        /**
+         * 根据 aspectRatio 和 fixedSize 设置非 CSSLayout 子节点的计算函数，需要在 fillCSSNode 之后调用
+         * 尺寸已经确定的节点不需要计算函数
+         *
+         * @param node
+         */
+        /* package */ void fillLeafNode(CSSNode node) {
+            CSSStyle style = node.getStyle();
+
+            if (fixedSize) {
+                node.setMeasureFunction(null);
+            } else if (!CSSConstants.isUndefined(aspectRatio) && aspectRatio > 0) {
+                if (CSSConstants.isUndefined(style.width) || CSSConstants.isUndefined(style.height)) {
+                    node.setMeasureFunction(aspectRatioMeasureFunction);
+                } else {
+                    node.setMeasureFunction(null);
+                }
+            } else {
+                node.setMeasureFunction(measureFunction);
+            }
+        }
+
+        private static boolean isExactDimension(int dimension) {
+            return dimension != WRAP_CONTENT && dimension != MATCH_PARENT;
         }
 
         @Override
@@ -796,7 +1623,7 @@ public class CSSLayout extends ViewGroup {
                     //    break;
 
                     case R.styleable.CSSLayout_LayoutParams_layout_minWidth:
-                        minHeight = a.getDimension(attr, 0);
+                        minWidth = a.getDimension(attr, 0);
                         break;
                     case R.styleable.CSSLayout_LayoutParams_layout_minHeight:
                         minHeight = a.getDimension(attr, 0);
@@ -838,7 +1665,7 @@ public class CSSLayout extends ViewGroup {
                         break;
 
                     case R.styleable.CSSLayout_LayoutParams_layout_alignSelf:
-                        alignSelf = getEnum(a.getInt(attr, 0), CSSAlign.class);
+                        alignSelf = getEnum(a.getInt(attr, 0), ALIGN_VALUES);
                         break;
 
                     case R.styleable.CSSLayout_LayoutParams_layout_flex:
@@ -846,7 +1673,14 @@ public class CSSLayout extends ViewGroup {
                         break;
 
                     case R.styleable.CSSLayout_LayoutParams_layout_position:
-                        position = getEnum(a.getInt(attr, 0), CSSPositionType.class);
+                        position = getEnum(a.getInt(attr, 0), POSITION_TYPE_VALUES);
+                        break;
+
+                    case R.styleable.CSSLayout_LayoutParams_layout_aspectRatio:
+                        aspectRatio = a.getFloat(attr, CSSConstants.UNDEFINED);
+                        break;
+                    case R.styleable.CSSLayout_LayoutParams_layout_fixedSize:
+                        fixedSize = a.getBoolean(attr, false);
                         break;
                 }
             }
@@ -860,18 +1694,43 @@ public class CSSLayout extends ViewGroup {
         public CSSNode cssNode;
         public boolean isCssLayout;
 
-        private static LinkedList<ChildProperty> statePool = new LinkedList<ChildProperty>();
+        /**
+         * 节点是否在 CSSNode 树中，GONE 的子节点不在树中
+         */
+        public boolean isAttached;
+
+        /**
+         * 布局动画的起始位置
+         */
+        public boolean hasFromFrame;
+        public int fromLeft;
+        public int fromTop;
+        public int fromRight;
+        public int fromBottom;
+
+        /**
+         * 每个线程使用独立的池，支持在后台线程 inflate
+         */
+        private static final ThreadLocal<ArrayList<ChildProperty>> statePool = new ThreadLocal<ArrayList<ChildProperty>>() {
+            @Override
+            protected ArrayList<ChildProperty> initialValue() {
+                return new ArrayList<ChildProperty>();
+            }
+        };
 
-        public static ChildProperty get(View childView, CSSNode node, boolean isCssLayout) {
+        public static ChildProperty get(View childView, CSSNode node, boolean isCssLayout, boolean isAttached) {
+            ArrayList<ChildProperty> pool = statePool.get();
             ChildProperty state;
-            if (statePool.size() > 0) {
-                state = statePool.removeLast();
+            int size = pool.size();
+            if (size > 0) {
+                state = pool.remove(size - 1);
             } else {
                 state = new ChildProperty();
             }
             state.view = childView;
             state.cssNode = node;
             state.isCssLayout = isCssLayout;
+            state.isAttached = isAttached;
             return state;
         }
 
@@ -879,19 +1738,30 @@ public class CSSLayout extends ViewGroup {
             state.view = null;
             state.cssNode = null;
             state.isCssLayout = false;
-            statePool.addLast(state);
+            state.isAttached = false;
+            state.hasFromFrame = false;
+            statePool.get().add(state);
         }
 
     }
 
     /**
      * CSSNode 池,用于减少内存开销
+     * 使用 ArrayList 作为栈，存取时不会分配对象
+     * 每个线程使用独立的池，支持在后台线程 inflate
      */
-    private static LinkedList<CSSNode> nodePool = new LinkedList<CSSNode>();
+    private static final ThreadLocal<ArrayList<CSSNode>> nodePool = new ThreadLocal<ArrayList<CSSNode>>() {
+        @Override
+        protected ArrayList<CSSNode> initialValue() {
+            return new ArrayList<CSSNode>();
+        }
+    };
 
     private static CSSNode getNode() {
-        if (nodePool.size() > 0) {
-            CSSNode node = nodePool.removeLast();
+        ArrayList<CSSNode> pool = nodePool.get();
+        int size = pool.size();
+        if (size > 0) {
+            CSSNode node = pool.remove(size - 1);
             node.clear();
             return node;
         }
@@ -899,11 +1769,20 @@ public class CSSLayout extends ViewGroup {
     }
 
     private static void freeNode(CSSNode node) {
-        nodePool.addLast(node);
+        nodePool.get().add(node);
     }
 
-    private static <T extends Enum<T>> T getEnum(int value, Class<T> enumType) {
-        T[] constants = enumType.getEnumConstants();
+    /**
+     * 枚举值，values() 每次调用都会复制数组，所以缓存起来
+     */
+    private static final CSSDirection[] DIRECTION_VALUES = CSSDirection.values();
+    private static final CSSFlexDirection[] FLEX_DIRECTION_VALUES = CSSFlexDirection.values();
+    private static final CSSJustify[] JUSTIFY_VALUES = CSSJustify.values();
+    private static final CSSAlign[] ALIGN_VALUES = CSSAlign.values();
+    private static final CSSWrap[] WRAP_VALUES = CSSWrap.values();
+    private static final CSSPositionType[] POSITION_TYPE_VALUES = CSSPositionType.values();
+
+    private static <T extends Enum<T>> T getEnum(int value, T[] constants) {
         return constants[value];
     }
 }
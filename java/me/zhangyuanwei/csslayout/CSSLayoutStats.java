@@ -0,0 +1,88 @@
+package me.zhangyuanwei.csslayout;
+
+import android.os.Looper;
+import android.view.Choreographer;
+
+/**
+ * 按帧统计根 CSSLayout 的计算次数和耗时
+ * 只统计主线程上的计算
+ */
+public final class CSSLayoutStats implements Choreographer.FrameCallback {
+
+    private static final CSSLayoutStats sInstance = new CSSLayoutStats();
+
+    private boolean mFrameScheduled = false;
+
+    /**
+     * 当前帧正在累计的统计数据
+     */
+    private int mRootCount;
+    private long mLayoutTimeNanos;
+
+    /**
+     * 最近一帧的统计数据
+     */
+    private int mFrameRootCount;
+    private long mFrameLayoutTimeNanos;
+
+    private CSSLayoutStats() {
+    }
+
+    public static CSSLayoutStats getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * 最近一帧中执行计算的根节点数量，没有计算的帧为 0
+     *
+     * @return
+     */
+    public int getFrameRootCount() {
+        return mFrameRootCount;
+    }
+
+    /**
+     * 最近一帧中执行计算的总耗时，单位纳秒，没有计算的帧为 0
+     *
+     * @return
+     */
+    public long getFrameLayoutTimeNanos() {
+        return mFrameLayoutTimeNanos;
+    }
+
+    /**
+     * 记录一次根节点的计算，下一帧开始时汇总为最近一帧的统计数据
+     *
+     * @param timeNanos 耗时，单位纳秒
+     */
+    /* package */ void onRootCalculated(long timeNanos) {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            return;
+        }
+
+        mRootCount++;
+        mLayoutTimeNanos += timeNanos;
+        scheduleFrame();
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mFrameScheduled = false;
+        mFrameRootCount = mRootCount;
+        mFrameLayoutTimeNanos = mLayoutTimeNanos;
+        mRootCount = 0;
+        mLayoutTimeNanos = 0;
+
+        // 有计算的帧之后再汇总一帧，没有新的计算时统计数据清零，而不是一直保留最后一次有计算的帧
+        if (mFrameRootCount > 0) {
+            scheduleFrame();
+        }
+    }
+
+    private void scheduleFrame() {
+        if (!mFrameScheduled) {
+            mFrameScheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+}
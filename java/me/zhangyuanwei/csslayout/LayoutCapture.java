@@ -0,0 +1,213 @@
+package me.zhangyuanwei.csslayout;
+
+import com.facebook.csslayout.CSSNode.MeasureFunction;
+import com.facebook.csslayout.CSSStyle;
+import com.facebook.csslayout.MeasureOutput;
+import com.facebook.csslayout.Spacing;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * 将 CSSLayout 根节点的 CSSNode 树保存为二进制格式，用于离线分析
+ * 保存的内容包括样式、树结构、根节点的 MeasureSpec，以及每个叶子节点 measureFunction 的返回值
+ * 保存的文件可以用 test 源码集中的 LayoutReplay 在 JVM 上重新计算
+ */
+public final class LayoutCapture {
+
+    private LayoutCapture() {
+    }
+
+    /**
+     * 保存布局树，需要在主线程调用
+     *
+     * @param root 已经 measure 过的根节点
+     * @param out
+     * @throws IOException
+     */
+    public static void capture(CSSLayout root, OutputStream out) throws IOException {
+        if (!root.hasRootLayout()) {
+            throw new IllegalStateException("CSSLayout must be a measured root layout");
+        }
+
+        int widthMeasureSpec = root.getLastWidthMeasureSpec();
+        int heightMeasureSpec = root.getLastHeightMeasureSpec();
+
+        // 先正常计算一次，确保样式和计算函数都已经设置
+        CSSLayout.CSSNode rootNode = root.mCSSNode;
+        root.calculateRootLayout(widthMeasureSpec, heightMeasureSpec);
+
+        // 替换叶子节点的计算函数，不重新填充样式，再计算一次，记录每次计算的结果
+        Recorder recorder = new Recorder();
+        attachRecorder(rootNode, recorder);
+        try {
+            rootNode.calculateLayout(root.getLayoutContext());
+            root.markLayoutSeen();
+        } finally {
+            detachRecorder(rootNode, recorder);
+        }
+
+        DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(out));
+        stream.writeInt(LayoutCaptureFormat.MAGIC);
+        stream.writeShort(LayoutCaptureFormat.VERSION);
+        stream.writeInt(widthMeasureSpec);
+        stream.writeInt(heightMeasureSpec);
+        writeNode(stream, rootNode, recorder);
+        stream.flush();
+
+        // 计算函数已经恢复，重新请求布局
+        root.requestLayout();
+    }
+
+    private static void attachRecorder(CSSLayout.CSSNode node, Recorder recorder) {
+        if (node.boundMeasureFunction != null) {
+            recorder.functions.put(node, node.boundMeasureFunction);
+            node.setMeasureFunction(recorder);
+            node.dirty();
+        }
+
+        int count = node.getChildCount();
+        for (int index = 0; index < count; index++) {
+            attachRecorder(node.getChildAt(index), recorder);
+        }
+    }
+
+    private static void detachRecorder(CSSLayout.CSSNode node, Recorder recorder) {
+        MeasureFunction function = recorder.functions.get(node);
+        if (function != null) {
+            node.setMeasureFunction(function);
+        }
+
+        int count = node.getChildCount();
+        for (int index = 0; index < count; index++) {
+            detachRecorder(node.getChildAt(index), recorder);
+        }
+    }
+
+    private static void writeNode(DataOutputStream stream, CSSLayout.CSSNode node, Recorder recorder) throws IOException {
+        CSSStyle style = node.getStyle();
+        int flags = node.styleFlags;
+        stream.writeInt(flags);
+        stream.writeFloat(style.width);
+        stream.writeFloat(style.height);
+
+        if ((flags & LayoutCaptureFormat.STYLE_DIRECTION) != 0) {
+            stream.writeByte(style.direction.ordinal());
+        }
+        if ((flags & LayoutCaptureFormat.STYLE_FLEX_DIRECTION) != 0) {
+            stream.writeByte(style.flexDirection.ordinal());
+        }
+        if ((flags & LayoutCaptureFormat.STYLE_JUSTIFY_CONTENT) != 0) {
+            stream.writeByte(style.justifyContent.ordinal());
+        }
+        if ((flags & LayoutCaptureFormat.STYLE_ALIGN_CONTENT) != 0) {
+            stream.writeByte(style.alignContent.ordinal());
+        }
+        if ((flags & LayoutCaptureFormat.STYLE_ALIGN_ITEMS) != 0) {
+            stream.writeByte(style.alignItems.ordinal());
+        }
+        if ((flags & LayoutCaptureFormat.STYLE_ALIGN_SELF) != 0) {
+            stream.writeByte(style.alignSelf.ordinal());
+        }
+        if ((flags & LayoutCaptureFormat.STYLE_POSITION_TYPE) != 0) {
+            stream.writeByte(style.positionType.ordinal());
+        }
+        if ((flags & LayoutCaptureFormat.STYLE_FLEX_WRAP) != 0) {
+            stream.writeByte(style.flexWrap.ordinal());
+        }
+        if ((flags & LayoutCaptureFormat.STYLE_FLEX) != 0) {
+            stream.writeFloat(style.flex);
+        }
+        if ((flags & LayoutCaptureFormat.STYLE_MARGIN) != 0) {
+            writeSpacing(stream, style.margin);
+        }
+        if ((flags & LayoutCaptureFormat.STYLE_PADDING) != 0) {
+            writeSpacing(stream, style.padding);
+        }
+        if ((flags & LayoutCaptureFormat.STYLE_BORDER) != 0) {
+            writeSpacing(stream, style.border);
+        }
+        if ((flags & LayoutCaptureFormat.STYLE_POSITION_TOP) != 0) {
+            stream.writeFloat(style.positionTop);
+        }
+        if ((flags & LayoutCaptureFormat.STYLE_POSITION_BOTTOM) != 0) {
+            stream.writeFloat(style.positionBottom);
+        }
+        if ((flags & LayoutCaptureFormat.STYLE_POSITION_LEFT) != 0) {
+            stream.writeFloat(style.positionLeft);
+        }
+        if ((flags & LayoutCaptureFormat.STYLE_POSITION_RIGHT) != 0) {
+            stream.writeFloat(style.positionRight);
+        }
+        if ((flags & LayoutCaptureFormat.STYLE_MIN_WIDTH) != 0) {
+            stream.writeFloat(style.minWidth);
+        }
+        if ((flags & LayoutCaptureFormat.STYLE_MIN_HEIGHT) != 0) {
+            stream.writeFloat(style.minHeight);
+        }
+        if ((flags & LayoutCaptureFormat.STYLE_MAX_WIDTH) != 0) {
+            stream.writeFloat(style.maxWidth);
+        }
+        if ((flags & LayoutCaptureFormat.STYLE_MAX_HEIGHT) != 0) {
+            stream.writeFloat(style.maxHeight);
+        }
+
+        // 叶子节点的计算结果，每条记录为 width, isExactly, 输出的宽, 输出的高
+        if (recorder.functions.containsKey(node)) {
+            ArrayList<float[]> records = recorder.records.get(node);
+            int size = records == null ? 0 : records.size();
+            stream.writeBoolean(true);
+            stream.writeInt(size);
+            for (int index = 0; index < size; index++) {
+                float[] record = records.get(index);
+                stream.writeFloat(record[0]);
+                stream.writeBoolean(record[1] != 0);
+                stream.writeFloat(record[2]);
+                stream.writeFloat(record[3]);
+            }
+        } else {
+            stream.writeBoolean(false);
+        }
+
+        int count = node.getChildCount();
+        stream.writeInt(count);
+        for (int index = 0; index < count; index++) {
+            writeNode(stream, node.getChildAt(index), recorder);
+        }
+    }
+
+    private static void writeSpacing(DataOutputStream stream, Spacing spacing) throws IOException {
+        stream.writeFloat(spacing.get(Spacing.LEFT));
+        stream.writeFloat(spacing.get(Spacing.TOP));
+        stream.writeFloat(spacing.get(Spacing.RIGHT));
+        stream.writeFloat(spacing.get(Spacing.BOTTOM));
+    }
+
+    /**
+     * 调用原来的计算函数，并记录结果
+     */
+    private static class Recorder implements MeasureFunction {
+
+        final HashMap<com.facebook.csslayout.CSSNode, MeasureFunction> functions =
+                new HashMap<com.facebook.csslayout.CSSNode, MeasureFunction>();
+
+        final HashMap<com.facebook.csslayout.CSSNode, ArrayList<float[]>> records =
+                new HashMap<com.facebook.csslayout.CSSNode, ArrayList<float[]>>();
+
+        @Override
+        public void measure(com.facebook.csslayout.CSSNode node, float width, boolean isExactly, MeasureOutput measureOutput) {
+            functions.get(node).measure(node, width, isExactly, measureOutput);
+
+            ArrayList<float[]> list = records.get(node);
+            if (list == null) {
+                list = new ArrayList<float[]>(2);
+                records.put(node, list);
+            }
+            list.add(new float[]{width, isExactly ? 1 : 0, measureOutput.width, measureOutput.height});
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package me.zhangyuanwei.csslayout;
+
+/**
+ * {@link LayoutCapture} 文件格式的常量，由 LayoutCapture 和 test 源码集中的 LayoutReplay 共用
+ * 不依赖 Android，LayoutReplay 可以只依赖这个类和 css-layout 在 JVM 上运行
+ * <p/>
+ * 每个节点保存的样式标记就是 CSSLayout.CSSNode 的 styleFlags，CSSNode.STYLE_* 使用这里的值
+ */
+public final class LayoutCaptureFormat {
+
+    public static final int MAGIC = 0x4353534c;
+    public static final short VERSION = 1;
+
+    public static final int STYLE_DIRECTION = 1;
+    public static final int STYLE_FLEX_DIRECTION = 1 << 1;
+    public static final int STYLE_JUSTIFY_CONTENT = 1 << 2;
+    public static final int STYLE_ALIGN_CONTENT = 1 << 3;
+    public static final int STYLE_ALIGN_ITEMS = 1 << 4;
+    public static final int STYLE_ALIGN_SELF = 1 << 5;
+    public static final int STYLE_POSITION_TYPE = 1 << 6;
+    public static final int STYLE_FLEX_WRAP = 1 << 7;
+    public static final int STYLE_FLEX = 1 << 8;
+    public static final int STYLE_MARGIN = 1 << 9;
+    public static final int STYLE_PADDING = 1 << 10;
+    public static final int STYLE_BORDER = 1 << 11;
+    public static final int STYLE_POSITION_TOP = 1 << 12;
+    public static final int STYLE_POSITION_BOTTOM = 1 << 13;
+    public static final int STYLE_POSITION_LEFT = 1 << 14;
+    public static final int STYLE_POSITION_RIGHT = 1 << 15;
+    public static final int STYLE_MIN_WIDTH = 1 << 16;
+    public static final int STYLE_MIN_HEIGHT = 1 << 17;
+    public static final int STYLE_MAX_WIDTH = 1 << 18;
+    public static final int STYLE_MAX_HEIGHT = 1 << 19;
+
+    private LayoutCaptureFormat() {
+    }
+}
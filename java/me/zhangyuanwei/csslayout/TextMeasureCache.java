@@ -0,0 +1,398 @@
+package me.zhangyuanwei.csslayout;
+
+import android.annotation.TargetApi;
+import android.graphics.Typeface;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.text.BoringLayout;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextDirectionHeuristic;
+import android.text.TextDirectionHeuristics;
+import android.text.TextPaint;
+import android.view.View;
+import android.view.View.MeasureSpec;
+import android.widget.TextView;
+
+import com.facebook.csslayout.CSSConstants;
+import com.facebook.csslayout.MeasureOutput;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * TextView 叶子节点的快速计算
+ * 根据文本、画笔、排版参数和宽度缓存 BoringLayout/StaticLayout 的尺寸，避免每次都走完整的 View.measure
+ * API 23 及以上使用 StaticLayout.Builder，与 TextView 的断行策略、断字频率和文字方向保持一致
+ * 缓存可以在后台线程通过 {@link #prewarm} 预热
+ */
+public final class TextMeasureCache {
+
+    /**
+     * 缓存的最大条目数
+     */
+    private static final int MAX_SIZE = 256;
+
+    private static final Object sLock = new Object();
+
+    /**
+     * 用于查询的 key，只在持有 sLock 时使用，避免查询时分配对象
+     */
+    private static final Entry sProbe = new Entry();
+
+    private static final LinkedHashMap<Entry, Entry> sCache = new LinkedHashMap<Entry, Entry>(MAX_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Entry, Entry> eldest) {
+            return size() > MAX_SIZE;
+        }
+    };
+
+    private TextMeasureCache() {
+    }
+
+    /**
+     * 预热缓存，可以在任意线程调用
+     * 排版参数（画笔、行距、断行策略等）从 template 中读取
+     *
+     * @param template  提供排版参数的 TextView，调用期间不能被其他线程修改
+     * @param text      文本
+     * @param widthSpec 文本区域（不含 padding）的 MeasureSpec
+     */
+    public static void prewarm(TextView template, String text, int widthSpec) {
+        int mode = MeasureSpec.getMode(widthSpec);
+        int width = mode == MeasureSpec.UNSPECIFIED ? 0 : MeasureSpec.getSize(widthSpec);
+        obtain(template, text, mode, width);
+    }
+
+    /**
+     * 清空缓存
+     */
+    public static void clear() {
+        synchronized (sLock) {
+            sCache.clear();
+        }
+    }
+
+    /**
+     * 判断 TextView 是否可以走快速计算
+     * 只处理普通 TextView 的纯文本，其他情况交给 View.measure
+     * getMinLines 返回 -1 表示设置了像素的 minHeight，getMinWidth 返回 -1 表示设置了 minEms
+     * compound drawable 会影响宽高，背景的最小尺寸会限制 TextView 的最小尺寸，这些情况也交给 View.measure
+     *
+     * @param view
+     * @return
+     */
+    /* package */ static boolean canMeasure(TextView view) {
+        if (view.getClass() != TextView.class) {
+            return false;
+        }
+
+        Drawable background = view.getBackground();
+        if (background != null && (background.getMinimumWidth() > 0 || background.getMinimumHeight() > 0)) {
+            return false;
+        }
+
+        CharSequence text = view.getText();
+        return text instanceof String
+                && text.length() > 0
+                && view.getTransformationMethod() == null
+                && view.getEllipsize() == null
+                && view.getMaxLines() == Integer.MAX_VALUE
+                && view.getMinLines() == 1
+                && view.getMaxWidth() == Integer.MAX_VALUE
+                && view.getMinWidth() == 0
+                && view.getMinimumWidth() == 0
+                && view.getMinimumHeight() == 0
+                && view.getCompoundPaddingLeft() == view.getPaddingLeft()
+                && view.getCompoundPaddingRight() == view.getPaddingRight()
+                && view.getCompoundPaddingTop() == view.getPaddingTop()
+                && view.getCompoundPaddingBottom() == view.getPaddingBottom()
+                && (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M || hasDefaultTextDirection(view));
+    }
+
+    /**
+     * 计算 TextView 的尺寸，结果与 CSSLayout 中 measureFunction 的语义一致（高度不受限制）
+     *
+     * @param view          需要先通过 {@link #canMeasure} 检查
+     * @param width         可用宽度，可能为 UNDEFINED
+     * @param isExactly     宽度是否为确定值
+     * @param measureOutput
+     */
+    /* package */ static void measure(TextView view, float width, boolean isExactly, MeasureOutput measureOutput) {
+        int hPadding = view.getCompoundPaddingLeft() + view.getCompoundPaddingRight();
+        int vPadding = view.getCompoundPaddingTop() + view.getCompoundPaddingBottom();
+
+        int mode, textWidth;
+        if (CSSConstants.isUndefined(width)) {
+            mode = MeasureSpec.UNSPECIFIED;
+            textWidth = 0;
+        } else {
+            mode = isExactly ? MeasureSpec.EXACTLY : MeasureSpec.AT_MOST;
+            textWidth = Math.max(0, (int) width - hPadding);
+        }
+
+        int measuredWidth, measuredHeight;
+        synchronized (sLock) {
+            sProbe.set(view, (String) view.getText(), mode, textWidth);
+            Entry entry = sCache.get(sProbe);
+            sProbe.reset();
+            if (entry != null) {
+                measuredWidth = entry.measuredWidth;
+                measuredHeight = entry.measuredHeight;
+            } else {
+                measuredWidth = -1;
+                measuredHeight = -1;
+            }
+        }
+
+        if (measuredWidth < 0) {
+            Entry entry = obtain(view, (String) view.getText(), mode, textWidth);
+            measuredWidth = entry.measuredWidth;
+            measuredHeight = entry.measuredHeight;
+        }
+
+        measureOutput.width = mode == MeasureSpec.EXACTLY ? (int) width : measuredWidth + hPadding;
+        measureOutput.height = measuredHeight + vPadding;
+    }
+
+    /**
+     * 查询缓存，未命中时在锁外计算，再放入缓存
+     */
+    private static Entry obtain(TextView view, String text, int mode, int width) {
+        Entry entry = new Entry();
+        entry.set(view, text, mode, width);
+
+        synchronized (sLock) {
+            Entry cached = sCache.get(entry);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        compute(entry, view.getPaint());
+
+        synchronized (sLock) {
+            sCache.put(entry, entry);
+        }
+        return entry;
+    }
+
+    private static void compute(Entry entry, TextPaint paint) {
+        String text = entry.text;
+        BoringLayout.Metrics boring = null;
+        // BoringLayout 只用于从左到右的文字方向，与 TextView 一致
+        if (entry.textDir == null
+                || entry.textDir == TextDirectionHeuristics.FIRSTSTRONG_LTR
+                || entry.textDir == TextDirectionHeuristics.LTR) {
+            boring = BoringLayout.isBoring(text, paint, new BoringLayout.Metrics());
+        }
+
+        int desired;
+        if (boring != null) {
+            desired = boring.width;
+        } else {
+            desired = (int) Math.ceil(Layout.getDesiredWidth(text, paint));
+        }
+
+        int layoutWidth;
+        switch (entry.mode) {
+            case MeasureSpec.EXACTLY:
+                layoutWidth = entry.width;
+                break;
+            case MeasureSpec.AT_MOST:
+                layoutWidth = Math.min(desired, entry.width);
+                break;
+            default:
+                layoutWidth = desired;
+                break;
+        }
+
+        int height;
+        if (boring != null && boring.width <= layoutWidth) {
+            // 单行文本，与 BoringLayout 的高度计算一致
+            if (entry.includePad) {
+                height = boring.bottom - boring.top;
+            } else {
+                height = boring.descent - boring.ascent;
+            }
+            if (entry.spacingMult != 1.0f || entry.spacingAdd != 0.0f) {
+                height = (int) (height * entry.spacingMult + entry.spacingAdd + 0.5f);
+            }
+        } else {
+            StaticLayout layout;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                layout = buildStaticLayout(entry, paint, layoutWidth);
+            } else {
+                layout = new StaticLayout(text, paint, layoutWidth, Layout.Alignment.ALIGN_NORMAL,
+                        entry.spacingMult, entry.spacingAdd, entry.includePad);
+            }
+            height = layout.getLineTop(layout.getLineCount());
+        }
+
+        entry.measuredWidth = layoutWidth;
+        entry.measuredHeight = height;
+    }
+
+    @TargetApi(Build.VERSION_CODES.M)
+    private static StaticLayout buildStaticLayout(Entry entry, TextPaint paint, int layoutWidth) {
+        StaticLayout.Builder builder = StaticLayout.Builder.obtain(entry.text, 0, entry.text.length(), paint, layoutWidth)
+                .setAlignment(Layout.Alignment.ALIGN_NORMAL)
+                .setLineSpacing(entry.spacingAdd, entry.spacingMult)
+                .setIncludePad(entry.includePad)
+                .setBreakStrategy(entry.breakStrategy)
+                .setHyphenationFrequency(entry.hyphenationFrequency)
+                .setTextDirection(entry.textDir);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            builder.setUseLineSpacingFromFallbacks(entry.fallbackLineSpacing);
+        }
+        return builder.build();
+    }
+
+    /**
+     * API 23 以下只能使用默认文字方向的 StaticLayout，所以只处理默认方向的 TextView
+     */
+    private static boolean hasDefaultTextDirection(TextView view) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            return true;
+        }
+        return view.getTextDirection() == View.TEXT_DIRECTION_FIRST_STRONG
+                && view.getLayoutDirection() == View.LAYOUT_DIRECTION_LTR;
+    }
+
+    /**
+     * 与 TextView 内部使用的文字方向规则一致
+     */
+    @TargetApi(Build.VERSION_CODES.M)
+    private static TextDirectionHeuristic getTextDirectionHeuristic(TextView view) {
+        boolean defaultIsRtl = view.getLayoutDirection() == View.LAYOUT_DIRECTION_RTL;
+        switch (view.getTextDirection()) {
+            case View.TEXT_DIRECTION_ANY_RTL:
+                return TextDirectionHeuristics.ANYRTL_LTR;
+            case View.TEXT_DIRECTION_LTR:
+                return TextDirectionHeuristics.LTR;
+            case View.TEXT_DIRECTION_RTL:
+                return TextDirectionHeuristics.RTL;
+            case View.TEXT_DIRECTION_LOCALE:
+                return TextDirectionHeuristics.LOCALE;
+            case View.TEXT_DIRECTION_FIRST_STRONG_LTR:
+                return TextDirectionHeuristics.FIRSTSTRONG_LTR;
+            case View.TEXT_DIRECTION_FIRST_STRONG_RTL:
+                return TextDirectionHeuristics.FIRSTSTRONG_RTL;
+            case View.TEXT_DIRECTION_FIRST_STRONG:
+            default:
+                return defaultIsRtl ? TextDirectionHeuristics.FIRSTSTRONG_RTL : TextDirectionHeuristics.FIRSTSTRONG_LTR;
+        }
+    }
+
+    /**
+     * 缓存条目，既是 key 也保存计算结果
+     */
+    private static class Entry {
+        String text;
+        float textSize;
+        float textScaleX;
+        float textSkewX;
+        float letterSpacing;
+        Typeface typeface;
+        Locale textLocale;
+        String fontFeatureSettings;
+        int flags;
+        float spacingMult;
+        float spacingAdd;
+        boolean includePad;
+        int breakStrategy;
+        int hyphenationFrequency;
+        TextDirectionHeuristic textDir;
+        boolean fallbackLineSpacing;
+        int mode;
+        int width;
+
+        int measuredWidth;
+        int measuredHeight;
+
+        void set(TextView view, String text, int mode, int width) {
+            TextPaint paint = view.getPaint();
+            this.text = text;
+            this.textSize = paint.getTextSize();
+            this.textScaleX = paint.getTextScaleX();
+            this.textSkewX = paint.getTextSkewX();
+            this.typeface = paint.getTypeface();
+            this.flags = paint.getFlags();
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+                this.textLocale = paint.getTextLocale();
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                this.letterSpacing = paint.getLetterSpacing();
+                this.fontFeatureSettings = paint.getFontFeatureSettings();
+            }
+            this.spacingMult = view.getLineSpacingMultiplier();
+            this.spacingAdd = view.getLineSpacingExtra();
+            this.includePad = view.getIncludeFontPadding();
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                this.breakStrategy = view.getBreakStrategy();
+                this.hyphenationFrequency = view.getHyphenationFrequency();
+                this.textDir = getTextDirectionHeuristic(view);
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+                this.fallbackLineSpacing = view.isFallbackLineSpacing();
+            }
+            this.mode = mode;
+            this.width = width;
+        }
+
+        /**
+         * 释放对外部对象的引用
+         */
+        void reset() {
+            text = null;
+            typeface = null;
+            textLocale = null;
+            fontFeatureSettings = null;
+            textDir = null;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry other = (Entry) o;
+            return mode == other.mode
+                    && width == other.width
+                    && flags == other.flags
+                    && includePad == other.includePad
+                    && breakStrategy == other.breakStrategy
+                    && hyphenationFrequency == other.hyphenationFrequency
+                    && fallbackLineSpacing == other.fallbackLineSpacing
+                    && textSize == other.textSize
+                    && textScaleX == other.textScaleX
+                    && textSkewX == other.textSkewX
+                    && letterSpacing == other.letterSpacing
+                    && spacingMult == other.spacingMult
+                    && spacingAdd == other.spacingAdd
+                    && typeface == other.typeface
+                    && textDir == other.textDir
+                    && (textLocale == null ? other.textLocale == null : textLocale.equals(other.textLocale))
+                    && (fontFeatureSettings == null ? other.fontFeatureSettings == null
+                    : fontFeatureSettings.equals(other.fontFeatureSettings))
+                    && text.equals(other.text);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = text.hashCode();
+            result = 31 * result + Float.floatToIntBits(textSize);
+            result = 31 * result + Float.floatToIntBits(letterSpacing);
+            result = 31 * result + (typeface != null ? typeface.hashCode() : 0);
+            result = 31 * result + (textLocale != null ? textLocale.hashCode() : 0);
+            result = 31 * result + flags;
+            result = 31 * result + mode;
+            result = 31 * result + width;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package me.zhangyuanwei.csslayout;
+
+import android.content.Context;
+import android.view.Gravity;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.LinearLayout;
+import android.widget.RelativeLayout;
+import android.widget.TextView;
+
+import com.facebook.csslayout.CSSAlign;
+import com.facebook.csslayout.CSSFlexDirection;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+
+/**
+ * CSSLayout 与系统布局的性能对比
+ * 使用 CSSLayout 和 LinearLayout/RelativeLayout/FrameLayout 分别构建 activity_main.xml 中
+ * r1、r2 两种结构，重复若干行，统计构建时间、measure + layout 时间、分配的字节数和 View 数量
+ * 每种布局分别用代码构建，以及从 benchmark_row_css.xml/benchmark_row_stock.xml inflate（包含 LayoutParams 的解析）
+ * 由 {@link LayoutBenchmarkTest} 在 Robolectric 中运行，分配的字节数来自 JVM 的 ThreadMXBean
+ */
+public final class LayoutBenchmark {
+
+    /**
+     * 默认的重复行数
+     */
+    public static final int[] DEFAULT_ROWS = {1, 10, 50};
+
+    private LayoutBenchmark() {
+    }
+
+    /**
+     * 构建测试界面
+     */
+    public interface ScreenFactory {
+        String getName();
+
+        ViewGroup create(Context context, int rows);
+    }
+
+    /**
+     * 单次测试的结果，时间单位为纳秒
+     */
+    public static class Result {
+        public String name;
+        public int rows;
+        public int viewCount;
+        public long inflateTime;
+        public long layoutTime;
+        public long allocBytes;
+
+        @Override
+        public String toString() {
+            return name + " rows=" + rows
+                    + " views=" + viewCount
+                    + " inflate=" + (inflateTime / 1000) + "us"
+                    + " measure+layout=" + (layoutTime / 1000) + "us"
+                    + " alloc=" + allocBytes + "B";
+        }
+    }
+
+    /**
+     * 对所有界面和行数执行测试
+     *
+     * @param context
+     * @param width      根节点宽度，单位像素
+     * @param iterations 每项测试的次数
+     * @return
+     */
+    public static ArrayList<Result> runAll(Context context, int width, int iterations) {
+        ScreenFactory[] factories = {CSS_LAYOUT, STOCK_LAYOUT, CSS_LAYOUT_XML, STOCK_LAYOUT_XML};
+        ArrayList<Result> results = new ArrayList<Result>();
+        for (int rows : DEFAULT_ROWS) {
+            for (ScreenFactory factory : factories) {
+                results.add(run(context, factory, rows, width, iterations));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 执行一项测试，结果为每次的平均值
+     * 每次 measure 之前对所有叶子节点调用 requestLayout，模拟内容变化后的完整重新布局
+     *
+     * @param context
+     * @param factory
+     * @param rows
+     * @param width      根节点宽度，单位像素
+     * @param iterations
+     * @return
+     */
+    public static Result run(Context context, ScreenFactory factory, int rows, int width, int iterations) {
+        int widthMeasureSpec = View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY);
+        int heightMeasureSpec = View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED);
+
+        // 预热
+        ViewGroup root = factory.create(context, rows);
+        measureAndLayout(root, widthMeasureSpec, heightMeasureSpec);
+
+        Result result = new Result();
+        result.name = factory.getName();
+        result.rows = rows;
+        result.viewCount = countViews(root);
+
+        long start;
+        long inflateTime = 0;
+        for (int i = 0; i < iterations; i++) {
+            start = System.nanoTime();
+            root = factory.create(context, rows);
+            inflateTime += System.nanoTime() - start;
+        }
+        measureAndLayout(root, widthMeasureSpec, heightMeasureSpec);
+
+        long layoutTime = 0;
+        for (int i = 0; i < iterations; i++) {
+            requestLayoutLeaves(root);
+            start = System.nanoTime();
+            measureAndLayout(root, widthMeasureSpec, heightMeasureSpec);
+            layoutTime += System.nanoTime() - start;
+        }
+
+        // 单独统计分配，避免统计影响耗时
+        long allocStart = getAllocatedBytes();
+        for (int i = 0; i < iterations; i++) {
+            requestLayoutLeaves(root);
+            measureAndLayout(root, widthMeasureSpec, heightMeasureSpec);
+        }
+        long allocEnd = getAllocatedBytes();
+
+        result.inflateTime = inflateTime / iterations;
+        result.layoutTime = layoutTime / iterations;
+        result.allocBytes = allocStart < 0 ? -1 : (allocEnd - allocStart) / iterations;
+        return result;
+    }
+
+    /**
+     * 当前线程已分配的字节数，JVM 不支持时返回 -1
+     *
+     * @return
+     */
+    private static long getAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static void measureAndLayout(ViewGroup root, int widthMeasureSpec, int heightMeasureSpec) {
+        root.measure(widthMeasureSpec, heightMeasureSpec);
+        root.layout(0, 0, root.getMeasuredWidth(), root.getMeasuredHeight());
+    }
+
+    private static void requestLayoutLeaves(ViewGroup group) {
+        int count = group.getChildCount();
+        View child;
+        for (int index = 0; index < count; index++) {
+            child = group.getChildAt(index);
+            if (child instanceof ViewGroup && ((ViewGroup) child).getChildCount() > 0) {
+                requestLayoutLeaves((ViewGroup) child);
+            } else {
+                child.requestLayout();
+            }
+        }
+    }
+
+    private static int countViews(View view) {
+        int total = 1;
+        if (view instanceof ViewGroup) {
+            ViewGroup group = (ViewGroup) view;
+            int count = group.getChildCount();
+            for (int index = 0; index < count; index++) {
+                total += countViews(group.getChildAt(index));
+            }
+        }
+        return total;
+    }
+
+    private static TextView createText(Context context, String text) {
+        TextView textView = new TextView(context);
+        textView.setGravity(Gravity.CENTER);
+        textView.setText(text);
+        return textView;
+    }
+
+    /**
+     * 使用 CSSLayout 构建
+     */
+    public static final ScreenFactory CSS_LAYOUT = new ScreenFactory() {
+        @Override
+        public String getName() {
+            return "CSSLayout";
+        }
+
+        @Override
+        public ViewGroup create(Context context, int rows) {
+            float dp = context.getResources().getDisplayMetrics().density;
+            CSSLayout wrapper = new CSSLayout(context);
+            CSSLayout.LayoutParams params;
+
+            for (int row = 0; row < rows; row++) {
+                // r1
+                CSSLayout r1 = new CSSLayout(context);
+                r1.setAlignItems(CSSAlign.STRETCH);
+                r1.setPadding(10 * dp);
+                params = new CSSLayout.LayoutParams();
+                params.setMargin(20 * dp);
+                wrapper.addView(r1, params);
+
+                r1.addView(new View(context), new CSSLayout.LayoutParams((int) (200 * dp), (int) (200 * dp)));
+                r1.addView(createText(context, "这是一个测试用例"), new CSSLayout.LayoutParams());
+                r1.addView(new CSSLayout(context), new CSSLayout.LayoutParams((int) (80 * dp), (int) (30 * dp)));
+                r1.addView(new CSSLayout(context), new CSSLayout.LayoutParams((int) (40 * dp), (int) (30 * dp)));
+                params = new CSSLayout.LayoutParams();
+                params.setAlignSelf(CSSAlign.CENTER);
+                r1.addView(createText(context, "我还能居中吗？"), params);
+
+                // r2
+                CSSLayout r2 = new CSSLayout(context);
+                r2.setFlexDirection(CSSFlexDirection.ROW);
+                r2.setPadding(10 * dp);
+                params = new CSSLayout.LayoutParams();
+                params.setMargin(10 * dp);
+                wrapper.addView(r2, params);
+
+                for (int column = 1; column <= 3; column++) {
+                    CSSLayout cell = new CSSLayout(context);
+                    params = new CSSLayout.LayoutParams();
+                    params.setFlex(column);
+                    params.setMargin((column - 1) * 10 * dp);
+                    r2.addView(cell, params);
+                    cell.addView(createText(context, "第一行第" + column + "列"), new CSSLayout.LayoutParams());
+                }
+            }
+            return wrapper;
+        }
+    };
+
+    /**
+     * 使用 LinearLayout、RelativeLayout 和 FrameLayout 构建相同的结构
+     */
+    public static final ScreenFactory STOCK_LAYOUT = new ScreenFactory() {
+        @Override
+        public String getName() {
+            return "Stock";
+        }
+
+        @Override
+        public ViewGroup create(Context context, int rows) {
+            float dp = context.getResources().getDisplayMetrics().density;
+            int match = ViewGroup.LayoutParams.MATCH_PARENT;
+            int wrap = ViewGroup.LayoutParams.WRAP_CONTENT;
+
+            LinearLayout wrapper = new LinearLayout(context);
+            wrapper.setOrientation(LinearLayout.VERTICAL);
+            LinearLayout.LayoutParams params;
+
+            for (int row = 0; row < rows; row++) {
+                // r1
+                LinearLayout r1 = new LinearLayout(context);
+                r1.setOrientation(LinearLayout.VERTICAL);
+                int padding = (int) (10 * dp);
+                r1.setPadding(padding, padding, padding, padding);
+                params = new LinearLayout.LayoutParams(match, wrap);
+                int margin = (int) (20 * dp);
+                params.setMargins(margin, margin, margin, margin);
+                wrapper.addView(r1, params);
+
+                r1.addView(new View(context), new LinearLayout.LayoutParams((int) (200 * dp), (int) (200 * dp)));
+                r1.addView(createText(context, "这是一个测试用例"), new LinearLayout.LayoutParams(match, wrap));
+                r1.addView(new FrameLayout(context), new LinearLayout.LayoutParams((int) (80 * dp), (int) (30 * dp)));
+                r1.addView(new FrameLayout(context), new LinearLayout.LayoutParams((int) (40 * dp), (int) (30 * dp)));
+
+                RelativeLayout center = new RelativeLayout(context);
+                RelativeLayout.LayoutParams centerParams = new RelativeLayout.LayoutParams(wrap, wrap);
+                centerParams.addRule(RelativeLayout.CENTER_HORIZONTAL);
+                center.addView(createText(context, "我还能居中吗？"), centerParams);
+                r1.addView(center, new LinearLayout.LayoutParams(match, wrap));
+
+                // r2
+                LinearLayout r2 = new LinearLayout(context);
+                r2.setOrientation(LinearLayout.HORIZONTAL);
+                r2.setPadding(padding, padding, padding, padding);
+                params = new LinearLayout.LayoutParams(match, wrap);
+                margin = (int) (10 * dp);
+                params.setMargins(margin, margin, margin, margin);
+                wrapper.addView(r2, params);
+
+                for (int column = 1; column <= 3; column++) {
+                    FrameLayout cell = new FrameLayout(context);
+                    params = new LinearLayout.LayoutParams(0, match, column);
+                    margin = (int) ((column - 1) * 10 * dp);
+                    params.setMargins(margin, margin, margin, margin);
+                    r2.addView(cell, params);
+                    cell.addView(createText(context, "第一行第" + column + "列"),
+                            new FrameLayout.LayoutParams(match, wrap));
+                }
+            }
+            return wrapper;
+        }
+    };
+
+    /**
+     * 从 benchmark_row_css.xml inflate，每行 inflate 一次
+     */
+    public static final ScreenFactory CSS_LAYOUT_XML = new ScreenFactory() {
+        @Override
+        public String getName() {
+            return "CSSLayout(xml)";
+        }
+
+        @Override
+        public ViewGroup create(Context context, int rows) {
+            CSSLayout wrapper = new CSSLayout(context);
+            inflateRows(context, R.layout.benchmark_row_css, wrapper, rows);
+            return wrapper;
+        }
+    };
+
+    /**
+     * 从 benchmark_row_stock.xml inflate，每行 inflate 一次
+     */
+    public static final ScreenFactory STOCK_LAYOUT_XML = new ScreenFactory() {
+        @Override
+        public String getName() {
+            return "Stock(xml)";
+        }
+
+        @Override
+        public ViewGroup create(Context context, int rows) {
+            LinearLayout wrapper = new LinearLayout(context);
+            wrapper.setOrientation(LinearLayout.VERTICAL);
+            inflateRows(context, R.layout.benchmark_row_stock, wrapper, rows);
+            return wrapper;
+        }
+    };
+
+    private static void inflateRows(Context context, int layoutId, ViewGroup wrapper, int rows) {
+        LayoutInflater inflater = LayoutInflater.from(context);
+        for (int row = 0; row < rows; row++) {
+            inflater.inflate(layoutId, wrapper, true);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package me.zhangyuanwei.csslayout;
+
+import android.content.Context;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 在 JVM 上运行 {@link LayoutBenchmark}，结果输出到标准输出
+ * Robolectric 中的耗时只能用于同一环境下的相对比较
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class LayoutBenchmarkTest {
+
+    private static final int WIDTH = 1080;
+    private static final int ITERATIONS = 20;
+
+    @Test
+    public void runBenchmark() {
+        Context context = RuntimeEnvironment.application;
+        ArrayList<LayoutBenchmark.Result> results = LayoutBenchmark.runAll(context, WIDTH, ITERATIONS);
+        for (LayoutBenchmark.Result result : results) {
+            System.out.println(result);
+        }
+    }
+
+    /**
+     * 代码构建和 inflate 的界面结构相同，对比才有意义
+     */
+    @Test
+    public void xmlScreensMatchProgrammaticScreens() {
+        Context context = RuntimeEnvironment.application;
+        int rows = 3;
+
+        assertEquals(LayoutBenchmark.run(context, LayoutBenchmark.CSS_LAYOUT, rows, WIDTH, 1).viewCount,
+                LayoutBenchmark.run(context, LayoutBenchmark.CSS_LAYOUT_XML, rows, WIDTH, 1).viewCount);
+        assertEquals(LayoutBenchmark.run(context, LayoutBenchmark.STOCK_LAYOUT, rows, WIDTH, 1).viewCount,
+                LayoutBenchmark.run(context, LayoutBenchmark.STOCK_LAYOUT_XML, rows, WIDTH, 1).viewCount);
+    }
+}
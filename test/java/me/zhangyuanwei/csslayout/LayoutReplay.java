@@ -0,0 +1,373 @@
+package me.zhangyuanwei.csslayout;
+
+import com.facebook.csslayout.CSSAlign;
+import com.facebook.csslayout.CSSConstants;
+import com.facebook.csslayout.CSSDirection;
+import com.facebook.csslayout.CSSFlexDirection;
+import com.facebook.csslayout.CSSJustify;
+import com.facebook.csslayout.CSSLayoutContext;
+import com.facebook.csslayout.CSSNode;
+import com.facebook.csslayout.CSSPositionType;
+import com.facebook.csslayout.CSSWrap;
+import com.facebook.csslayout.MeasureOutput;
+import com.facebook.csslayout.Spacing;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 读取 {@link LayoutCapture} 保存的布局树，在 JVM 上重新计算
+ * 属于 test 源码集，不随库发布
+ * 叶子节点使用保存的计算结果，只依赖 {@link LayoutCaptureFormat} 和 css-layout，不依赖 Android 环境
+ * <p/>
+ * 用法：java me.zhangyuanwei.csslayout.LayoutReplay &lt;file&gt; [iterations]
+ */
+public final class LayoutReplay {
+
+    /**
+     * 与 android.view.View.MeasureSpec 一致
+     */
+    private static final int MODE_SHIFT = 30;
+    private static final int MODE_MASK = 0x3 << MODE_SHIFT;
+    private static final int EXACTLY = 1 << MODE_SHIFT;
+    private static final int AT_MOST = 2 << MODE_SHIFT;
+
+    private static final CSSDirection[] DIRECTION_VALUES = CSSDirection.values();
+    private static final CSSFlexDirection[] FLEX_DIRECTION_VALUES = CSSFlexDirection.values();
+    private static final CSSJustify[] JUSTIFY_VALUES = CSSJustify.values();
+    private static final CSSAlign[] ALIGN_VALUES = CSSAlign.values();
+    private static final CSSWrap[] WRAP_VALUES = CSSWrap.values();
+    private static final CSSPositionType[] POSITION_TYPE_VALUES = CSSPositionType.values();
+
+    private final ReplayNode mRoot;
+    private final int mWidthMeasureSpec;
+    private final int mHeightMeasureSpec;
+    private final CSSLayoutContext mLayoutContext = new CSSLayoutContext();
+
+    private LayoutReplay(ReplayNode root, int widthMeasureSpec, int heightMeasureSpec) {
+        mRoot = root;
+        mWidthMeasureSpec = widthMeasureSpec;
+        mHeightMeasureSpec = heightMeasureSpec;
+    }
+
+    public static LayoutReplay read(InputStream in) throws IOException {
+        DataInputStream stream = new DataInputStream(new BufferedInputStream(in));
+        if (stream.readInt() != LayoutCaptureFormat.MAGIC) {
+            throw new IOException("Not a CSSLayout capture");
+        }
+        short version = stream.readShort();
+        if (version != LayoutCaptureFormat.VERSION) {
+            throw new IOException("Unsupported capture version: " + version);
+        }
+
+        int widthMeasureSpec = stream.readInt();
+        int heightMeasureSpec = stream.readInt();
+        ReplayNode root = readNode(stream);
+        root.setMeasureSpec(widthMeasureSpec, heightMeasureSpec);
+        return new LayoutReplay(root, widthMeasureSpec, heightMeasureSpec);
+    }
+
+    public CSSNode getRoot() {
+        return mRoot;
+    }
+
+    public int getWidthMeasureSpec() {
+        return mWidthMeasureSpec;
+    }
+
+    public int getHeightMeasureSpec() {
+        return mHeightMeasureSpec;
+    }
+
+    /**
+     * 执行一次完整的计算，所有叶子节点都会被 dirty
+     *
+     * @return 耗时，单位纳秒
+     */
+    public long calculate() {
+        mRoot.dirtyLeaves();
+        long start = System.nanoTime();
+        mRoot.calculateLayout(mLayoutContext);
+        long time = System.nanoTime() - start;
+        mRoot.markLayoutSeenRecursive();
+        return time;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: LayoutReplay <file> [iterations]");
+            System.exit(1);
+        }
+
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+        LayoutReplay replay;
+        FileInputStream in = new FileInputStream(args[0]);
+        try {
+            replay = read(in);
+        } finally {
+            in.close();
+        }
+
+        // 预热
+        for (int i = 0; i < iterations; i++) {
+            replay.calculate();
+        }
+
+        long total = 0;
+        long min = Long.MAX_VALUE;
+        long time;
+        for (int i = 0; i < iterations; i++) {
+            time = replay.calculate();
+            total += time;
+            min = Math.min(min, time);
+        }
+
+        System.out.println("nodes: " + replay.mRoot.countNodes());
+        System.out.println("size: " + replay.mRoot.getLayoutWidth() + "x" + replay.mRoot.getLayoutHeight());
+        System.out.println("iterations: " + iterations);
+        System.out.println("avg: " + (total / iterations / 1000.0) + " us");
+        System.out.println("min: " + (min / 1000.0) + " us");
+    }
+
+    private static ReplayNode readNode(DataInputStream stream) throws IOException {
+        ReplayNode node = new ReplayNode();
+        int flags = stream.readInt();
+        node.setStyleWidth(stream.readFloat());
+        node.setStyleHeight(stream.readFloat());
+
+        if ((flags & LayoutCaptureFormat.STYLE_DIRECTION) != 0) {
+            node.setDirection(DIRECTION_VALUES[stream.readByte()]);
+        }
+        if ((flags & LayoutCaptureFormat.STYLE_FLEX_DIRECTION) != 0) {
+            node.setFlexDirection(FLEX_DIRECTION_VALUES[stream.readByte()]);
+        }
+        if ((flags & LayoutCaptureFormat.STYLE_JUSTIFY_CONTENT) != 0) {
+            node.setJustifyContent(JUSTIFY_VALUES[stream.readByte()]);
+        }
+        if ((flags & LayoutCaptureFormat.STYLE_ALIGN_CONTENT) != 0) {
+            node.setAlignContent(ALIGN_VALUES[stream.readByte()]);
+        }
+        if ((flags & LayoutCaptureFormat.STYLE_ALIGN_ITEMS) != 0) {
+            node.setAlignItems(ALIGN_VALUES[stream.readByte()]);
+        }
+        if ((flags & LayoutCaptureFormat.STYLE_ALIGN_SELF) != 0) {
+            node.setAlignSelf(ALIGN_VALUES[stream.readByte()]);
+        }
+        if ((flags & LayoutCaptureFormat.STYLE_POSITION_TYPE) != 0) {
+            node.setPositionType(POSITION_TYPE_VALUES[stream.readByte()]);
+        }
+        if ((flags & LayoutCaptureFormat.STYLE_FLEX_WRAP) != 0) {
+            node.setWrap(WRAP_VALUES[stream.readByte()]);
+        }
+        if ((flags & LayoutCaptureFormat.STYLE_FLEX) != 0) {
+            node.setFlex(stream.readFloat());
+        }
+        if ((flags & LayoutCaptureFormat.STYLE_MARGIN) != 0) {
+            node.setMargin(Spacing.LEFT, stream.readFloat());
+            node.setMargin(Spacing.TOP, stream.readFloat());
+            node.setMargin(Spacing.RIGHT, stream.readFloat());
+            node.setMargin(Spacing.BOTTOM, stream.readFloat());
+        }
+        if ((flags & LayoutCaptureFormat.STYLE_PADDING) != 0) {
+            node.setPadding(Spacing.LEFT, stream.readFloat());
+            node.setPadding(Spacing.TOP, stream.readFloat());
+            node.setPadding(Spacing.RIGHT, stream.readFloat());
+            node.setPadding(Spacing.BOTTOM, stream.readFloat());
+        }
+        if ((flags & LayoutCaptureFormat.STYLE_BORDER) != 0) {
+            node.setBorder(Spacing.LEFT, stream.readFloat());
+            node.setBorder(Spacing.TOP, stream.readFloat());
+            node.setBorder(Spacing.RIGHT, stream.readFloat());
+            node.setBorder(Spacing.BOTTOM, stream.readFloat());
+        }
+        if ((flags & LayoutCaptureFormat.STYLE_POSITION_TOP) != 0) {
+            node.setPositionTop(stream.readFloat());
+        }
+        if ((flags & LayoutCaptureFormat.STYLE_POSITION_BOTTOM) != 0) {
+            node.setPositionBottom(stream.readFloat());
+        }
+        if ((flags & LayoutCaptureFormat.STYLE_POSITION_LEFT) != 0) {
+            node.setPositionLeft(stream.readFloat());
+        }
+        if ((flags & LayoutCaptureFormat.STYLE_POSITION_RIGHT) != 0) {
+            node.setPositionRight(stream.readFloat());
+        }
+        if ((flags & LayoutCaptureFormat.STYLE_MIN_WIDTH) != 0) {
+            node.setMinWidth(stream.readFloat());
+        }
+        if ((flags & LayoutCaptureFormat.STYLE_MIN_HEIGHT) != 0) {
+            node.setMinHeight(stream.readFloat());
+        }
+        if ((flags & LayoutCaptureFormat.STYLE_MAX_WIDTH) != 0) {
+            node.setMaxWidth(stream.readFloat());
+        }
+        if ((flags & LayoutCaptureFormat.STYLE_MAX_HEIGHT) != 0) {
+            node.setMaxHeight(stream.readFloat());
+        }
+
+        if (stream.readBoolean()) {
+            int size = stream.readInt();
+            node.records = new float[size * 4];
+            for (int index = 0; index < size; index++) {
+                node.records[index * 4] = stream.readFloat();
+                node.records[index * 4 + 1] = stream.readBoolean() ? 1 : 0;
+                node.records[index * 4 + 2] = stream.readFloat();
+                node.records[index * 4 + 3] = stream.readFloat();
+            }
+            node.setMeasureFunction(replayMeasureFunction);
+        }
+
+        int count = stream.readInt();
+        for (int index = 0; index < count; index++) {
+            node.addChildAt(readNode(stream), index);
+        }
+        return node;
+    }
+
+    /**
+     * 使用保存的结果作为叶子节点的计算结果
+     * 优先使用参数完全相同的记录，否则使用宽度最接近的记录
+     */
+    private static final CSSNode.MeasureFunction replayMeasureFunction = new CSSNode.MeasureFunction() {
+        @Override
+        public void measure(CSSNode node, float width, boolean isExactly, MeasureOutput measureOutput) {
+            float[] records = ((ReplayNode) node).records;
+            int count = records.length / 4;
+            if (count == 0) {
+                measureOutput.width = 0;
+                measureOutput.height = 0;
+                return;
+            }
+
+            float target = CSSConstants.isUndefined(width) ? Float.MAX_VALUE : width;
+            float value, distance;
+            float bestDistance = Float.MAX_VALUE;
+            int best = 0;
+
+            for (int index = 0; index < count; index++) {
+                value = records[index * 4];
+                if (CSSConstants.isUndefined(value)) {
+                    value = Float.MAX_VALUE;
+                }
+                distance = Math.abs(value - target);
+                if (distance == 0 && (records[index * 4 + 1] != 0) == isExactly) {
+                    best = index;
+                    break;
+                }
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = index;
+                }
+            }
+
+            measureOutput.width = records[best * 4 + 2];
+            measureOutput.height = records[best * 4 + 3];
+        }
+    };
+
+    private static class ReplayNode extends CSSNode {
+        float[] records;
+
+        /**
+         * 与 CSSLayout.CSSNode#setMeasureSpec 一致
+         */
+        void setMeasureSpec(int widthMeasureSpec, int heightMeasureSpec) {
+            int wMode = widthMeasureSpec & MODE_MASK;
+            int wSize = widthMeasureSpec & ~MODE_MASK;
+            int hMode = heightMeasureSpec & MODE_MASK;
+            int hSize = heightMeasureSpec & ~MODE_MASK;
+
+            setStyleWidth(wMode == EXACTLY ? wSize : CSSConstants.UNDEFINED);
+            setMaxWidth(wMode == AT_MOST ? wSize : CSSConstants.UNDEFINED);
+            setStyleHeight(hMode == EXACTLY ? hSize : CSSConstants.UNDEFINED);
+            setMaxHeight(hMode == AT_MOST ? hSize : CSSConstants.UNDEFINED);
+        }
+
+        /**
+         * css-layout 没有提供以下属性的 setter，与 CSSLayout.CSSNode 一致
+         */
+        void setAlignContent(CSSAlign alignContent) {
+            if (!valuesEqual(style.alignContent, alignContent)) {
+                style.alignContent = alignContent;
+                dirty();
+            }
+        }
+
+        void setMinWidth(float minWidth) {
+            if (!valuesEqual(style.minWidth, minWidth)) {
+                style.minWidth = minWidth;
+                dirty();
+            }
+        }
+
+        void setMinHeight(float minHeight) {
+            if (!valuesEqual(style.minHeight, minHeight)) {
+                style.minHeight = minHeight;
+                dirty();
+            }
+        }
+
+        void setMaxWidth(float maxWidth) {
+            if (!valuesEqual(style.maxWidth, maxWidth)) {
+                style.maxWidth = maxWidth;
+                dirty();
+            }
+        }
+
+        void setMaxHeight(float maxHeight) {
+            if (!valuesEqual(style.maxHeight, maxHeight)) {
+                style.maxHeight = maxHeight;
+                dirty();
+            }
+        }
+
+        void dirtyLeaves() {
+            int count = getChildCount();
+            if (count == 0 && records != null) {
+                dirty();
+                return;
+            }
+            for (int index = 0; index < count; index++) {
+                getChildAt(index).dirtyLeaves();
+            }
+        }
+
+        void markLayoutSeenRecursive() {
+            int count = getChildCount();
+            for (int index = 0; index < count; index++) {
+                getChildAt(index).markLayoutSeenRecursive();
+            }
+            if (hasNewLayout()) {
+                markLayoutSeen();
+            }
+        }
+
+        int countNodes() {
+            int count = getChildCount();
+            int total = 1;
+            for (int index = 0; index < count; index++) {
+                total += getChildAt(index).countNodes();
+            }
+            return total;
+        }
+
+        @Override
+        public ReplayNode getChildAt(int i) {
+            return (ReplayNode) super.getChildAt(i);
+        }
+
+        @Override
+        public void markLayoutSeen() {
+            super.markLayoutSeen();
+        }
+
+        @Override
+        public void dirty() {
+            super.dirty();
+        }
+    }
+}